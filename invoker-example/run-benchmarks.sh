@@ -0,0 +1,42 @@
+#!/bin/sh
+# Runs DowncallBenchmark against this tree and against a baseline revision, by default the first commit of the
+# repository. Needs a JDK 20 as the default java and mvn on the path, the results are written to
+# target/benchmarks/{baseline,current}.json next to this script.
+set -e
+
+root=$(git rev-parse --show-toplevel)
+baseline=${1:-$(git -C "$root" rev-list --max-parents=0 HEAD)}
+results="$root/invoker-example/target/benchmarks"
+work=$(mktemp -d)
+trap 'git -C "$root" worktree remove --force "$work/baseline" 2>/dev/null; rm -rf "$work"' EXIT
+mkdir -p "$results"
+
+# $1 project root, $2 result file
+run() {
+    mvn -B -q -f "$1/pom.xml" -DskipTests install
+    classpath=$(mvn -B -q -f "$1/invoker-example/pom.xml" dependency:build-classpath -Dmdep.outputFile=/dev/stdout)
+    java --enable-preview -cp "$1/invoker-example/target/classes:$classpath" org.openjdk.jmh.Main DowncallBenchmark \
+        -rf json -rff "$2"
+}
+
+# the baseline only gets the benchmark and its jmh dependencies, interfaces it declares are linked at runtime there
+git -C "$root" worktree add --detach "$work/baseline" "$baseline"
+example="$work/baseline/invoker-example"
+mkdir -p "$example/src/main/java/de/intelligence/panamainvokerv4/example"
+cp "$root/invoker-example/src/main/java/de/intelligence/panamainvokerv4/example/DowncallBenchmark.java" \
+    "$example/src/main/java/de/intelligence/panamainvokerv4/example/"
+sed -i 's#    </dependencies>#        <dependency>\
+            <groupId>org.openjdk.jmh</groupId>\
+            <artifactId>jmh-core</artifactId>\
+            <version>1.36</version>\
+        </dependency>\
+        <dependency>\
+            <groupId>org.openjdk.jmh</groupId>\
+            <artifactId>jmh-generator-annprocess</artifactId>\
+            <version>1.36</version>\
+            <scope>provided</scope>\
+        </dependency>\
+    </dependencies>#' "$example/pom.xml"
+
+run "$work/baseline" "$results/baseline.json"
+run "$root" "$results/current.json"
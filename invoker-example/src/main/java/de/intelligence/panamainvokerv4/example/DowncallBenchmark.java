@@ -0,0 +1,96 @@
+package de.intelligence.panamainvokerv4.example;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.SegmentScope;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intelligence.panamainvokerv4.invoker.Panama;
+import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
+import de.intelligence.panamainvokerv4.invoker.library.NativeFunction;
+import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+
+/**
+ * Per-call latency of {@code strlen} through the invocation paths of the library. The benchmark only uses API which
+ * already existed before handles were linked once per function, so it also runs against a build of that version.
+ * <p>
+ * {@code run-benchmarks.sh} in this module runs it against such a baseline and against the working tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "--enable-preview")
+public class DowncallBenchmark {
+
+    // private, so the binding processor skips it and it is linked at runtime through NativeFunction
+    @NativeInterface("c")
+    private interface RuntimeLibC {
+
+        long strlen(Pointer str);
+
+    }
+
+    // implemented by the binding processor at compile time
+    @NativeInterface("c")
+    public interface GeneratedLibC {
+
+        long strlen(Pointer str);
+
+    }
+
+    private MemorySegment str;
+    private Pointer strPtr;
+    private MethodHandle raw;
+    private NativeFunction strlen;
+    private RuntimeLibC runtimeLibC;
+    private GeneratedLibC generatedLibC;
+
+    @Setup
+    public void setup() {
+        this.str = SegmentAllocator.nativeAllocator(SegmentScope.auto()).allocateUtf8String("benchmark");
+        this.strPtr = new Pointer(this.str);
+        final MemorySegment symbol = Linker.nativeLinker().defaultLookup().find("strlen").orElseThrow();
+        this.raw = Linker.nativeLinker().downcallHandle(symbol, FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+        this.strlen = NativeFunction.fromAddress(symbol.address());
+        this.runtimeLibC = Panama.load(RuntimeLibC.class);
+        this.generatedLibC = Panama.load(GeneratedLibC.class);
+    }
+
+    @Benchmark
+    public long rawDowncall() throws Throwable {
+        return (long) this.raw.invokeExact(this.str);
+    }
+
+    @Benchmark
+    public long runtimeInterface() {
+        return this.runtimeLibC.strlen(this.strPtr);
+    }
+
+    @Benchmark
+    public long generatedInterface() {
+        return this.generatedLibC.strlen(this.strPtr);
+    }
+
+    @Benchmark
+    public Object nativeFunction() {
+        return this.strlen.invoke(long.class, this.strPtr);
+    }
+
+}
@@ -0,0 +1,94 @@
+package de.intelligence.panamainvokerv4.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Emits the bindings for {@code @NativeInterface} and {@code @NativeStruct} types at compile time, so that
+ * {@code Panama.load} and {@code Structure} can skip their reflective setup at runtime.
+ * Types the processor cannot bind statically are left to the runtime path.
+ */
+@SupportedAnnotationTypes({NativeTypes.NATIVE_INTERFACE, NativeTypes.NATIVE_STRUCT})
+public final class BindingProcessor extends AbstractProcessor {
+
+    // has to match GeneratedBindings in the invoker module
+    static final String INTERFACE_SUFFIX = "_PanamaImpl";
+    static final String STRUCTURE_SUFFIX = "_PanamaStruct";
+
+    private NativeTypes nativeTypes;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        this.nativeTypes = new NativeTypes(processingEnv);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (final TypeElement annotation : annotations) {
+            final String annotationName = annotation.getQualifiedName().toString();
+            for (final Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (NativeTypes.NATIVE_INTERFACE.equals(annotationName) && element.getKind() == ElementKind.INTERFACE) {
+                    final TypeElement type = (TypeElement) element;
+                    this.write(type, INTERFACE_SUFFIX, new InterfaceBindingWriter(this.processingEnv, this.nativeTypes)
+                            .write(type, this.getPackageName(type), this.getGeneratedName(type, INTERFACE_SUFFIX)));
+                } else if (NativeTypes.NATIVE_STRUCT.equals(annotationName) && element.getKind() == ElementKind.CLASS) {
+                    final TypeElement type = (TypeElement) element;
+                    this.write(type, STRUCTURE_SUFFIX, new StructBindingWriter(this.processingEnv, this.nativeTypes)
+                            .write(type, this.getPackageName(type), this.getGeneratedName(type, STRUCTURE_SUFFIX)));
+                }
+            }
+        }
+        return false;
+    }
+
+    private void write(TypeElement type, String suffix, Optional<String> source) {
+        if (source.isEmpty()) {
+            return;
+        }
+        final String packageName = this.getPackageName(type);
+        final String simpleName = this.getGeneratedName(type, suffix);
+        final String qualifiedName = packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+        try {
+            final JavaFileObject file = this.processingEnv.getFiler().createSourceFile(qualifiedName, type);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.get());
+            }
+        } catch (IOException ex) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write binding " + qualifiedName + ": " + ex.getMessage(), type);
+        }
+    }
+
+    private String getPackageName(TypeElement type) {
+        final PackageElement packageElement = this.processingEnv.getElementUtils().getPackageOf(type);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private String getGeneratedName(TypeElement type, String suffix) {
+        final String packageName = this.getPackageName(type);
+        final String binaryName = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String flatName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+        return flatName.replace('$', '_') + suffix;
+    }
+
+}
@@ -0,0 +1,256 @@
+package de.intelligence.panamainvokerv4.processor;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Writes the implementation of a native interface. Every method calls a static final call site whose function
+ * descriptor was computed at compile time, the call sites are linked to the library while an instance holds it.
+ */
+final class InterfaceBindingWriter {
+
+    private final ProcessingEnvironment processingEnv;
+    private final NativeTypes nativeTypes;
+
+    InterfaceBindingWriter(ProcessingEnvironment processingEnv, NativeTypes nativeTypes) {
+        this.processingEnv = processingEnv;
+        this.nativeTypes = nativeTypes;
+    }
+
+    Optional<String> write(TypeElement type, String packageName, String simpleName) {
+        if (!this.nativeTypes.isAccessible(type) || !type.getTypeParameters().isEmpty()) {
+            return this.skip(type, "interface is private or generic");
+        }
+        if (!type.getInterfaces().isEmpty()) {
+            return this.skip(type, "inherited methods are bound at runtime");
+        }
+        final AnnotationMirror nativeInterface = this.nativeTypes.getAnnotation(type, NativeTypes.NATIVE_INTERFACE).orElseThrow();
+        final String libraryName = (String) this.nativeTypes.getAnnotationValue(nativeInterface, "value").orElse("");
+        final boolean lazy = (Boolean) this.nativeTypes.getAnnotationValue(nativeInterface, "lazy").orElse(false);
+        if (libraryName.isBlank()) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "No native library was specified for native interface " + type.getQualifiedName(), type);
+            return Optional.empty();
+        }
+        final List<ExecutableElement> methods = ElementFilter.methodsIn(type.getEnclosedElements()).stream()
+                .filter(m -> m.getModifiers().contains(Modifier.ABSTRACT))
+                .toList();
+        for (final ExecutableElement method : methods) {
+            if (!method.getTypeParameters().isEmpty() || !this.isAccessible(method.getReturnType())
+                    || method.getParameters().stream().anyMatch(p -> !this.isAccessible(p.asType()))) {
+                return this.skip(type, "method " + method.getSimpleName() + " uses generic or private types");
+            }
+        }
+
+        final String interfaceName = this.nativeTypes.getSourceName(type.asType());
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(BindingProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(simpleName).append(" implements ").append(interfaceName).append(" {\n\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("    public static final java.lang.foreign.FunctionDescriptor DESCRIPTOR_").append(i)
+                    .append(" = ").append(this.getDescriptor(methods.get(i))).append(";\n");
+        }
+        source.append('\n');
+        for (int i = 0; i < methods.size(); i++) {
+            source.append("    private static final java.lang.invoke.MutableCallSite SITE_").append(i)
+                    .append(" = new java.lang.invoke.MutableCallSite(").append(this.getMethodType(methods.get(i))).append(");\n")
+                    .append("    private static final java.lang.invoke.MethodHandle HANDLE_").append(i)
+                    .append(" = SITE_").append(i).append(".dynamicInvoker();\n");
+        }
+        // the call sites are linked while an instance holds the library, lazily bound ones on their first call
+        source.append("\n    private static final de.intelligence.panamainvokerv4.invoker.library.LibraryBinding BINDING =\n")
+                .append("            new de.intelligence.panamainvokerv4.invoker.library.LibraryBinding(\"")
+                .append(this.escape(libraryName)).append("\", ").append(lazy).append(", ").append(simpleName).append("::bind");
+        for (int i = 0; i < methods.size(); i++) {
+            source.append(", SITE_").append(i);
+        }
+        source.append(");\n\n")
+                .append("    public ").append(simpleName).append("() {\n")
+                .append("        BINDING.acquire();\n")
+                .append("    }\n\n")
+                .append("    public static void release(").append(simpleName).append(" implementation) {\n")
+                .append("        BINDING.release();\n")
+                .append("    }\n\n")
+                .append("    private static java.lang.invoke.MethodHandle bind(de.intelligence.panamainvokerv4.invoker.library.NativeLibrary library, int index) {\n")
+                .append("        switch (index) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            final ExecutableElement method = methods.get(i);
+            source.append("            case ").append(i)
+                    .append(": return de.intelligence.panamainvokerv4.invoker.util.DynamicMethodHandle.create(library.findSymbol(\"")
+                    .append(method.getSimpleName()).append("\"), ").append(this.getMethodType(method)).append(", DESCRIPTOR_")
+                    .append(i).append(", ").append(method.isVarArgs()).append(this.getCallOptions(method))
+                    .append(").getMethodHandle();\n");
+        }
+        source.append("        }\n")
+                .append("        throw new IllegalArgumentException(\"No native method \" + index);\n")
+                .append("    }\n");
+
+        for (int i = 0; i < methods.size(); i++) {
+            this.writeMethod(source, methods.get(i), "HANDLE_" + i);
+        }
+
+        source.append("\n    @Override\n")
+                .append("    public String toString() {\n")
+                .append("        return \"").append(type.getQualifiedName()).append("$PanamaProxy\";\n")
+                .append("    }\n\n")
+                .append("}\n");
+        return Optional.of(source.toString());
+    }
+
+    private void writeMethod(StringBuilder source, ExecutableElement method, String handle) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final TypeMirror returnType = method.getReturnType();
+        source.append("\n    @Override\n")
+                .append("    public ").append(this.nativeTypes.getSourceName(returnType)).append(' ')
+                .append(method.getSimpleName()).append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            if (i > 0) {
+                source.append(", ");
+            }
+            final TypeMirror parameterType = parameters.get(i).asType();
+            if (method.isVarArgs() && i == parameters.size() - 1) {
+                source.append(this.nativeTypes.getSourceName(((ArrayType) parameterType).getComponentType())).append("...");
+            } else {
+                source.append(this.nativeTypes.getSourceName(parameterType));
+            }
+            source.append(" arg").append(i);
+        }
+        source.append(") {\n")
+                .append("        try {\n")
+                .append("            ");
+        if (returnType.getKind() != TypeKind.VOID) {
+            source.append("return (").append(this.nativeTypes.getSourceName(returnType)).append(") ");
+        }
+        source.append(handle).append(".invokeExact(");
+        for (int i = 0; i < parameters.size(); i++) {
+            source.append(i > 0 ? ", arg" : "arg").append(i);
+        }
+        source.append(");\n");
+        source.append("        } catch (RuntimeException | Error ex) {\n")
+                .append("            throw ex;\n")
+                .append("        } catch (Throwable ex) {\n")
+                .append("            throw new de.intelligence.panamainvokerv4.invoker.exception.NativeException(\"Failed to invoke native method ")
+                .append(method.getSimpleName()).append("\", ex);\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    private String getDescriptor(ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        // the variadic part is described per call
+        final int numLayouts = method.isVarArgs() ? parameters.size() - 1 : parameters.size();
+        // the parameter receiving a structure returned by value is not passed
+        final String argumentLayouts = parameters.stream()
+                .limit(numLayouts)
+                .filter(p -> this.nativeTypes.getAnnotation(p, NativeTypes.RESULT).isEmpty())
+                .map(p -> this.nativeTypes.getLayout(p.asType()))
+                .collect(Collectors.joining(", "));
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            return "java.lang.foreign.FunctionDescriptor.ofVoid(" + argumentLayouts + ")";
+        }
+        return "java.lang.foreign.FunctionDescriptor.of(" + this.nativeTypes.getLayout(method.getReturnType())
+                + (argumentLayouts.isEmpty() ? "" : ", " + argumentLayouts) + ")";
+    }
+
+    // arguments annotated with @Persistent are not freed after the call, @Critical methods skip the thread state transition
+    // where the runtime's linker supports it and @ZeroCopy arrays are passed as heap segments where the linker allows it
+    private String getCallOptions(ExecutableElement method) {
+        final List<? extends VariableElement> parameters = method.getParameters();
+        final boolean critical = this.nativeTypes.getAnnotation(method, NativeTypes.CRITICAL).isPresent();
+        final boolean zeroCopyMethod = this.nativeTypes.getAnnotation(method, NativeTypes.ZERO_COPY).isPresent();
+        final List<Boolean> persistent = parameters.stream()
+                .map(p -> this.nativeTypes.getAnnotation(p, NativeTypes.PERSISTENT).isPresent())
+                .toList();
+        final List<Boolean> zeroCopy = parameters.stream()
+                .map(p -> this.nativeTypes.isPrimitiveArray(p.asType())
+                        && (zeroCopyMethod || this.nativeTypes.getAnnotation(p, NativeTypes.ZERO_COPY).isPresent()))
+                .toList();
+        final List<String> directions = parameters.stream()
+                .map(this::getDirection)
+                .toList();
+        final boolean anyZeroCopy = zeroCopy.contains(true);
+        final boolean anyDirection = directions.stream().anyMatch(d -> !d.equals("IN_OUT"));
+        if (!critical && !anyZeroCopy && !anyDirection && !persistent.contains(true)) {
+            return "";
+        }
+        final StringBuilder options = new StringBuilder(", new de.intelligence.panamainvokerv4.invoker.util.CallOptions(")
+                .append(this.toArray(persistent));
+        if (anyZeroCopy || anyDirection) {
+            options.append(", ").append(this.toArray(zeroCopy));
+        }
+        if (anyDirection) {
+            options.append(directions.stream()
+                    .map(d -> "de.intelligence.panamainvokerv4.invoker.util.CallOptions.Direction." + d)
+                    .collect(Collectors.joining(", ", ", new de.intelligence.panamainvokerv4.invoker.util.CallOptions.Direction[]{", "}")));
+        }
+        return options.append(", ").append(critical).append(')').toString();
+    }
+
+    // arrays and structures are copied in and out unless their direction is restricted, @Result parameters are not passed
+    private String getDirection(VariableElement parameter) {
+        final boolean in = this.nativeTypes.getAnnotation(parameter, NativeTypes.IN).isPresent();
+        final boolean out = this.nativeTypes.getAnnotation(parameter, NativeTypes.OUT).isPresent();
+        final boolean inOut = this.nativeTypes.getAnnotation(parameter, NativeTypes.IN_OUT).isPresent();
+        final boolean result = this.nativeTypes.getAnnotation(parameter, NativeTypes.RESULT).isPresent();
+        if ((in ? 1 : 0) + (out ? 1 : 0) + (inOut ? 1 : 0) + (result ? 1 : 0) > 1) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Conflicting direction annotations on parameter " + parameter.getSimpleName(), parameter);
+        }
+        if ((in || out || inOut || result) && parameter.asType().getKind().isPrimitive()) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Direction annotation on primitive parameter " + parameter.getSimpleName(), parameter);
+        }
+        return in ? "IN" : out ? "OUT" : result ? "RESULT" : "IN_OUT";
+    }
+
+    private String toArray(List<Boolean> flags) {
+        return flags.stream().map(String::valueOf).collect(Collectors.joining(", ", "new boolean[]{", "}"));
+    }
+
+    private String getMethodType(ExecutableElement method) {
+        final StringBuilder methodType = new StringBuilder("java.lang.invoke.MethodType.methodType(")
+                .append(this.nativeTypes.getClassLiteral(method.getReturnType()));
+        for (final VariableElement parameter : method.getParameters()) {
+            methodType.append(", ").append(this.nativeTypes.getClassLiteral(parameter.asType()));
+        }
+        return methodType.append(')').toString();
+    }
+
+    private boolean isAccessible(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return this.isAccessible(((ArrayType) type).getComponentType());
+        }
+        if (type.getKind() == TypeKind.DECLARED) {
+            return this.nativeTypes.isAccessible(this.processingEnv.getTypeUtils().asElement(type));
+        }
+        return type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID;
+    }
+
+    private String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private Optional<String> skip(TypeElement type, String reason) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "Binding for " + type.getQualifiedName() + " is created at runtime: " + reason, type);
+        return Optional.empty();
+    }
+
+}
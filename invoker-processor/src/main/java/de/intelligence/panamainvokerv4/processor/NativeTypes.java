@@ -0,0 +1,163 @@
+package de.intelligence.panamainvokerv4.processor;
+
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+/**
+ * Maps java types to the source of their native memory layout, mirroring the default converter registry.
+ */
+final class NativeTypes {
+
+    static final String NATIVE_INTERFACE = "de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface";
+    static final String NATIVE_STRUCT = "de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct";
+    static final String FIELD_ORDER = "de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder";
+    static final String PERSISTENT = "de.intelligence.panamainvokerv4.invoker.annotation.Persistent";
+    static final String CRITICAL = "de.intelligence.panamainvokerv4.invoker.annotation.Critical";
+    static final String CALLBACK = "de.intelligence.panamainvokerv4.invoker.annotation.Callback";
+    static final String ZERO_COPY = "de.intelligence.panamainvokerv4.invoker.annotation.ZeroCopy";
+    static final String IN = "de.intelligence.panamainvokerv4.invoker.annotation.In";
+    static final String OUT = "de.intelligence.panamainvokerv4.invoker.annotation.Out";
+    static final String IN_OUT = "de.intelligence.panamainvokerv4.invoker.annotation.InOut";
+    static final String RESULT = "de.intelligence.panamainvokerv4.invoker.annotation.Result";
+    static final String BY_VALUE = "de.intelligence.panamainvokerv4.invoker.type.Structure.ByValue";
+    static final String STRUCTURE = "de.intelligence.panamainvokerv4.invoker.type.IStructure";
+    static final String UNION = "de.intelligence.panamainvokerv4.invoker.type.Union";
+    static final String POINTER = "de.intelligence.panamainvokerv4.invoker.type.Pointer";
+    static final String WSTRING = "de.intelligence.panamainvokerv4.invoker.type.WString";
+    static final String STRUCT_ARRAY = "de.intelligence.panamainvokerv4.invoker.type.StructArray";
+
+    static final String VALUE_LAYOUT = "java.lang.foreign.ValueLayout";
+    static final String REGISTRY = "de.intelligence.panamainvokerv4.invoker.Panama.getNewConverters()";
+
+    private final ProcessingEnvironment processingEnv;
+    private final Types types;
+
+    NativeTypes(ProcessingEnvironment processingEnv) {
+        this.processingEnv = processingEnv;
+        this.types = processingEnv.getTypeUtils();
+    }
+
+    // source of the layout of the given type, types unknown at compile time are resolved through the registry
+    String getLayout(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return this.getPrimitiveLayout(type.getKind());
+        }
+        if (type.getKind() == TypeKind.ARRAY) {
+            final TypeMirror component = ((ArrayType) type).getComponentType();
+            final TypeKind componentKind = component.getKind().isPrimitive()
+                    ? component.getKind() : this.getUnboxedKind(component);
+            if (componentKind != null && componentKind != TypeKind.BOOLEAN) {
+                return VALUE_LAYOUT + ".ADDRESS";
+            }
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            final TypeKind unboxed = this.getUnboxedKind(type);
+            if (unboxed != null) {
+                return this.getPrimitiveLayout(unboxed);
+            }
+            if (this.isType(type, "java.lang.String") || this.isSubtype(type, POINTER) || this.isType(type, WSTRING)
+                    || this.isType(type, STRUCT_ARRAY)) {
+                return VALUE_LAYOUT + ".ADDRESS";
+            }
+            final Element element = this.types.asElement(type);
+            if ((this.getAnnotation(element, NATIVE_STRUCT).isPresent() && this.getAnnotation(element, BY_VALUE).isEmpty())
+                    || this.getAnnotation(element, CALLBACK).isPresent()) {
+                return VALUE_LAYOUT + ".ADDRESS";
+            }
+        }
+        return REGISTRY + ".getNativeMemoryLayout(" + this.getClassLiteral(type) + ")";
+    }
+
+    // arrays of primitives except boolean, which share their memory layout with native code
+    boolean isPrimitiveArray(TypeMirror type) {
+        if (type.getKind() != TypeKind.ARRAY) {
+            return false;
+        }
+        final TypeKind componentKind = ((ArrayType) type).getComponentType().getKind();
+        return componentKind.isPrimitive() && componentKind != TypeKind.BOOLEAN;
+    }
+
+    String getPrimitiveLayout(TypeKind kind) {
+        return VALUE_LAYOUT + switch (kind) {
+            case BOOLEAN -> ".JAVA_BOOLEAN";
+            case BYTE -> ".JAVA_BYTE";
+            case SHORT -> ".JAVA_SHORT";
+            case CHAR -> ".JAVA_CHAR";
+            case INT -> ".JAVA_INT";
+            case LONG -> ".JAVA_LONG";
+            case FLOAT -> ".JAVA_FLOAT";
+            case DOUBLE -> ".JAVA_DOUBLE";
+            default -> throw new IllegalArgumentException("Not a primitive type: " + kind);
+        };
+    }
+
+    String getClassLiteral(TypeMirror type) {
+        return this.getSourceName(type) + ".class";
+    }
+
+    String getSourceName(TypeMirror type) {
+        return this.types.erasure(type).toString();
+    }
+
+    boolean isType(TypeMirror type, String qualifiedName) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) this.types.asElement(type)).getQualifiedName().contentEquals(qualifiedName);
+    }
+
+    boolean isSubtype(TypeMirror type, String qualifiedName) {
+        final TypeElement element = this.processingEnv.getElementUtils().getTypeElement(qualifiedName);
+        return element != null && this.types.isSubtype(this.types.erasure(type), this.types.erasure(element.asType()));
+    }
+
+    // private types and members cannot be referenced from the generated classes
+    boolean isAccessible(Element element) {
+        for (Element current = element; current != null && current.getKind() != ElementKind.PACKAGE;
+             current = current.getEnclosingElement()) {
+            if (current.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Optional<AnnotationMirror> getAnnotation(Element element, String qualifiedName) {
+        if (element == null) {
+            return Optional.empty();
+        }
+        return element.getAnnotationMirrors().stream()
+                .filter(a -> ((TypeElement) a.getAnnotationType().asElement()).getQualifiedName().contentEquals(qualifiedName))
+                .map(a -> (AnnotationMirror) a)
+                .findFirst();
+    }
+
+    Optional<Object> getAnnotationValue(AnnotationMirror annotation, String name) {
+        for (final Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : this.processingEnv.getElementUtils().getElementValuesWithDefaults(annotation).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return Optional.of(entry.getValue().getValue());
+            }
+        }
+        return Optional.empty();
+    }
+
+    private TypeKind getUnboxedKind(TypeMirror type) {
+        try {
+            return this.types.unboxedType(type).getKind();
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+}
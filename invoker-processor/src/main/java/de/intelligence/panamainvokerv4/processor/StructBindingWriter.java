@@ -0,0 +1,172 @@
+package de.intelligence.panamainvokerv4.processor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Writes the layout and the field accessors of a native struct. Only structs consisting of primitive and
+ * {@code Pointer} fields are bound at compile time, all others keep using the converter registry at runtime.
+ */
+final class StructBindingWriter {
+
+    private final ProcessingEnvironment processingEnv;
+    private final NativeTypes nativeTypes;
+
+    StructBindingWriter(ProcessingEnvironment processingEnv, NativeTypes nativeTypes) {
+        this.processingEnv = processingEnv;
+        this.nativeTypes = nativeTypes;
+    }
+
+    Optional<String> write(TypeElement type, String packageName, String simpleName) {
+        if (!this.nativeTypes.isAccessible(type) || !type.getTypeParameters().isEmpty()
+                || !this.nativeTypes.isSubtype(type.asType(), NativeTypes.STRUCTURE)) {
+            return this.skip(type, "struct is private, generic or not a structure");
+        }
+        if (this.nativeTypes.isSubtype(type.asType(), NativeTypes.UNION)) {
+            return this.skip(type, "unions only transfer their active member");
+        }
+        final List<VariableElement> fields = new ArrayList<>(ElementFilter.fieldsIn(type.getEnclosedElements()).stream()
+                .filter(f -> !f.getModifiers().contains(Modifier.STATIC))
+                .toList());
+        if (!this.sortFields(type, fields)) {
+            return Optional.empty();
+        }
+        for (final VariableElement field : fields) {
+            if (field.getModifiers().contains(Modifier.PRIVATE)) {
+                return this.skip(type, "field " + field.getSimpleName() + " is private");
+            }
+            final TypeMirror fieldType = field.asType();
+            if (!fieldType.getKind().isPrimitive() && !this.nativeTypes.isType(fieldType, NativeTypes.POINTER)) {
+                return this.skip(type, "field " + field.getSimpleName() + " needs a runtime converter");
+            }
+        }
+
+        final String structName = this.nativeTypes.getSourceName(type.asType());
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(BindingProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(simpleName)
+                .append(" implements de.intelligence.panamainvokerv4.invoker.type.IStructureAccessor<")
+                .append(structName).append("> {\n\n")
+                .append("    public static final java.lang.foreign.StructLayout LAYOUT = de.intelligence.panamainvokerv4.invoker.util.ConversionUtils.structLayout(");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append(i > 0 ? ",\n            " : "\n            ")
+                    .append(this.getFieldLayout(fields.get(i))).append(".withName(\"").append(fields.get(i).getSimpleName()).append("\")");
+        }
+        source.append(");\n\n");
+        for (int i = 0; i < fields.size(); i++) {
+            source.append("    private static final long OFFSET_").append(i)
+                    .append(" = LAYOUT.byteOffset(java.lang.foreign.MemoryLayout.PathElement.groupElement(\"")
+                    .append(fields.get(i).getSimpleName()).append("\"));\n");
+        }
+
+        source.append("\n    @Override\n")
+                .append("    public java.lang.foreign.StructLayout getLayout() {\n")
+                .append("        return LAYOUT;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void read(").append(structName).append(" structure, java.lang.foreign.MemorySegment segment) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            final VariableElement field = fields.get(i);
+            source.append("        structure.").append(field.getSimpleName()).append(" = ");
+            if (field.asType().getKind().isPrimitive()) {
+                source.append("segment.get(").append(this.getFieldLayout(field)).append(", OFFSET_").append(i).append(");\n");
+            } else {
+                source.append("new ").append(NativeTypes.POINTER).append("(segment.get(")
+                        .append(NativeTypes.VALUE_LAYOUT).append(".ADDRESS, OFFSET_").append(i).append("));\n");
+            }
+        }
+        source.append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public void write(").append(structName).append(" structure, java.lang.foreign.MemorySegment segment) {\n");
+        for (int i = 0; i < fields.size(); i++) {
+            final VariableElement field = fields.get(i);
+            source.append("        segment.set(").append(this.getFieldLayout(field)).append(", OFFSET_").append(i).append(", ");
+            if (field.asType().getKind().isPrimitive()) {
+                source.append("structure.").append(field.getSimpleName()).append(");\n");
+            } else {
+                source.append("structure.").append(field.getSimpleName())
+                        .append(" == null ? java.lang.foreign.MemorySegment.NULL : structure.")
+                        .append(field.getSimpleName()).append(".getSegment());\n");
+            }
+        }
+        source.append("    }\n\n")
+                .append("}\n");
+        return Optional.of(source.toString());
+    }
+
+    // same rules as the runtime layout computation, but declaration order is known here
+    private boolean sortFields(TypeElement type, List<VariableElement> fields) {
+        final boolean atLeastOneAnnotated = fields.stream()
+                .anyMatch(f -> this.nativeTypes.getAnnotation(f, NativeTypes.FIELD_ORDER).isPresent());
+        if (atLeastOneAnnotated) {
+            if (fields.stream().anyMatch(f -> this.nativeTypes.getAnnotation(f, NativeTypes.FIELD_ORDER).isEmpty())) {
+                return this.error(type, "None or all fields have to be annotated with @FieldOrder for struct " + type.getQualifiedName());
+            }
+            final Set<Integer> orderNums = new HashSet<>();
+            for (final VariableElement field : fields) {
+                if (!orderNums.add(this.getFieldOrder(field))) {
+                    return this.error(type, "FieldOrder annotations need distinct order priorities");
+                }
+            }
+            fields.sort(Comparator.comparingInt(this::getFieldOrder));
+            return true;
+        }
+        final AnnotationMirror nativeStruct = this.nativeTypes.getAnnotation(type, NativeTypes.NATIVE_STRUCT).orElseThrow();
+        @SuppressWarnings("unchecked")
+        final List<String> fieldOrder = ((List<? extends AnnotationValue>) this.nativeTypes.getAnnotationValue(nativeStruct, "fieldOrder")
+                .orElse(List.of())).stream()
+                .map(v -> (String) v.getValue())
+                .toList();
+        if (fieldOrder.isEmpty()) {
+            return true;
+        }
+        if (fieldOrder.size() != fields.size()) {
+            return this.error(type, "size of fieldOrder elements does not match field count for struct " + type.getQualifiedName());
+        }
+        if (fields.stream().anyMatch(f -> !fieldOrder.contains(f.getSimpleName().toString()))) {
+            return this.error(type, "mismatch between fieldOrder names and field names for struct " + type.getQualifiedName());
+        }
+        fields.sort(Comparator.comparingInt(f -> fieldOrder.indexOf(f.getSimpleName().toString())));
+        return true;
+    }
+
+    private int getFieldOrder(VariableElement field) {
+        final AnnotationMirror fieldOrder = this.nativeTypes.getAnnotation(field, NativeTypes.FIELD_ORDER).orElseThrow();
+        return (Integer) this.nativeTypes.getAnnotationValue(fieldOrder, "value").orElseThrow();
+    }
+
+    private String getFieldLayout(VariableElement field) {
+        final TypeMirror fieldType = field.asType();
+        return fieldType.getKind().isPrimitive()
+                ? this.nativeTypes.getPrimitiveLayout(fieldType.getKind()) : NativeTypes.VALUE_LAYOUT + ".ADDRESS";
+    }
+
+    private boolean error(TypeElement type, String message) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, type);
+        return false;
+    }
+
+    private Optional<String> skip(TypeElement type, String reason) {
+        this.processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "Binding for " + type.getQualifiedName() + " is created at runtime: " + reason, type);
+        return Optional.empty();
+    }
+
+}
@@ -0,0 +1,278 @@
+package de.intelligence.panamainvokerv4.processor;
+
+import java.io.IOException;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.intelligence.panamainvokerv4.invoker.Panama;
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.Structure;
+import de.intelligence.panamainvokerv4.invoker.update.UpdatePolicy;
+import de.intelligence.panamainvokerv4.invoker.util.ConversionUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BindingProcessorTests {
+
+    private static final Map<String, String> SOURCES = Map.of(
+            "sample/Mixed.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder;
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+                    import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+                    import de.intelligence.panamainvokerv4.invoker.type.Structure;
+
+                    @NativeStruct
+                    public class Mixed extends Structure {
+                        @FieldOrder(2) public short small;
+                        @FieldOrder(0) public byte tag;
+                        @FieldOrder(1) public long value;
+                        @FieldOrder(3) public Pointer next;
+                        @FieldOrder(4) public float ratio;
+                        @FieldOrder(5) public double total;
+                        @FieldOrder(6) public byte last;
+                    }
+                    """,
+            "sample/Ordered.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+                    import de.intelligence.panamainvokerv4.invoker.type.Structure;
+
+                    @NativeStruct(fieldOrder = {"b", "a"})
+                    public class Ordered extends Structure {
+                        public int a;
+                        public byte b;
+                    }
+                    """,
+            "sample/Plain.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+                    import de.intelligence.panamainvokerv4.invoker.type.Structure;
+
+                    @NativeStruct
+                    public class Plain extends Structure {
+                        public byte a;
+                        public int b;
+                        public short c;
+                    }
+                    """,
+            "sample/IntOrLong.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder;
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+                    import de.intelligence.panamainvokerv4.invoker.type.Union;
+
+                    @NativeStruct
+                    public class IntOrLong extends Union {
+                        @FieldOrder(0) public int i;
+                        @FieldOrder(1) public long l;
+                    }
+                    """,
+            "sample/LibC.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
+
+                    @NativeInterface("c")
+                    public interface LibC {
+                        int abs(int value);
+                    }
+                    """,
+            "sample/Broken.java", """
+                    package sample;
+
+                    public interface Broken {
+                        int abs(int value);
+                    }
+                    """,
+            "sample/Broken_PanamaImpl.java", """
+                    package sample;
+
+                    public final class Broken_PanamaImpl implements Broken {
+                        private static final int VALUE = Integer.parseInt("broken");
+
+                        @Override
+                        public int abs(int value) {
+                            return VALUE;
+                        }
+                    }
+                    """,
+            "sample/Holder.java", """
+                    package sample;
+
+                    import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
+
+                    public class Holder {
+                        @NativeInterface("c")
+                        private interface Hidden {
+                            int abs(int value);
+                        }
+                    }
+                    """);
+
+    @TempDir
+    static Path temp;
+
+    private static Path generated;
+    private static Path processed;
+    private static Path plain;
+
+    @BeforeAll
+    static void compileSamples() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for (final Map.Entry<String, String> source : SOURCES.entrySet()) {
+            final Path file = temp.resolve("src").resolve(source.getKey());
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, source.getValue());
+            files.add(file);
+        }
+        generated = Files.createDirectories(temp.resolve("generated"));
+        processed = Files.createDirectories(temp.resolve("processed"));
+        plain = Files.createDirectories(temp.resolve("plain"));
+        BindingProcessorTests.compile(files, processed, List.of("-processor", BindingProcessor.class.getName(), "-s", generated.toString()));
+        // the same classes without generated bindings, the runtime computes their layouts reflectively
+        BindingProcessorTests.compile(files, plain, List.of("-proc:none"));
+    }
+
+    private static void compile(List<Path> files, Path output, List<String> extraOptions) throws IOException {
+        final List<Diagnostic<? extends JavaFileObject>> errors = BindingProcessorTests.compileErrors(files, output, extraOptions);
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    private static List<Diagnostic<? extends JavaFileObject>> compileErrors(List<Path> files, Path output,
+                                                                            List<String> extraOptions) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final List<String> options = new ArrayList<>(List.of("--release", String.valueOf(Runtime.version().feature()),
+                "--enable-preview", "-classpath", System.getProperty("java.class.path"), "-d", output.toString()));
+        options.addAll(extraOptions);
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromPaths(files)).call();
+        }
+        return diagnostics.getDiagnostics().stream().filter(d -> d.getKind() == Diagnostic.Kind.ERROR).toList();
+    }
+
+    private static URLClassLoader loader(Path classes) throws IOException {
+        return new URLClassLoader(new URL[]{classes.toUri().toURL()}, BindingProcessorTests.class.getClassLoader());
+    }
+
+    @Test
+    void testGeneratedSources() {
+        assertTrue(Files.exists(generated.resolve("sample/Mixed_PanamaStruct.java")));
+        assertTrue(Files.exists(generated.resolve("sample/Ordered_PanamaStruct.java")));
+        assertTrue(Files.exists(generated.resolve("sample/Plain_PanamaStruct.java")));
+        assertTrue(Files.exists(generated.resolve("sample/LibC_PanamaImpl.java")));
+        // left to the runtime
+        assertFalse(Files.exists(generated.resolve("sample/IntOrLong_PanamaStruct.java")));
+        assertFalse(Files.exists(generated.resolve("sample/Holder_Hidden_PanamaImpl.java")));
+    }
+
+    @Test
+    void testDirectionOnPrimitiveIsRejected() throws IOException {
+        final Path file = temp.resolve("invalid/sample/InvalidDirection.java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, """
+                package sample;
+
+                import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
+                import de.intelligence.panamainvokerv4.invoker.annotation.Out;
+
+                @NativeInterface("c")
+                public interface InvalidDirection {
+                    int abs(@Out int value);
+                }
+                """);
+        final Path output = Files.createDirectories(temp.resolve("invalid-out"));
+        final List<Diagnostic<? extends JavaFileObject>> errors = BindingProcessorTests.compileErrors(List.of(file), output,
+                List.of("-processor", BindingProcessor.class.getName(), "-s", output.toString()));
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).getMessage(null).startsWith("Direction annotation on primitive parameter"));
+    }
+
+    @Test
+    void testStructLayoutsMatchRuntime() throws Exception {
+        try (URLClassLoader processedLoader = loader(processed); URLClassLoader plainLoader = loader(plain)) {
+            for (final String struct : List.of("sample.Mixed", "sample.Ordered", "sample.Plain")) {
+                final Object generatedLayout = processedLoader.loadClass(struct + BindingProcessor.STRUCTURE_SUFFIX)
+                        .getField("LAYOUT").get(null);
+                final MemoryLayout runtimeLayout = ConversionUtils.convertStruct(plainLoader.loadClass(struct));
+                assertEquals(runtimeLayout, generatedLayout, struct);
+            }
+        }
+    }
+
+    @Test
+    void testDirtyReadOfGeneratedStruct() throws Exception {
+        try (URLClassLoader processedLoader = loader(processed)) {
+            final Class<? extends Structure> plainClass = processedLoader.loadClass("sample.Plain").asSubclass(Structure.class);
+            final Structure plain = Structure.newInstance(plainClass);
+            plain.setReadPolicy(UpdatePolicy.DIRTY);
+
+            // the generated accessor decodes the struct as a whole, the marked field keeps its java value
+            plainClass.getField("a").setByte(plain, (byte) 1);
+            plain.markDirty("a");
+            plain.segment().set(ValueLayout.JAVA_INT, 4, 2);
+            plain.autoRead(false);
+            assertEquals((byte) 1, plainClass.getField("a").getByte(plain));
+            assertEquals(2, plainClass.getField("b").getInt(plain));
+        }
+    }
+
+    @Test
+    void testFailedInitializationIsReported() throws Exception {
+        try (URLClassLoader processedLoader = loader(processed)) {
+            final Class<?> broken = processedLoader.loadClass("sample.Broken");
+            assertThrows(NumberFormatException.class, () -> Panama.load(broken));
+            // the class is not initialized again, the error is still reported as a native exception
+            assertThrows(NativeException.class, () -> Panama.load(broken));
+        }
+    }
+
+    @Test
+    void testGeneratedImplementationIsReleased() throws Exception {
+        try (URLClassLoader processedLoader = loader(processed)) {
+            final Class<?> libC = processedLoader.loadClass("sample.LibC");
+            final Method abs = libC.getMethod("abs", int.class);
+
+            final Object generatedImpl = Panama.load(libC);
+            assertEquals("LibC" + BindingProcessor.INTERFACE_SUFFIX, generatedImpl.getClass().getSimpleName());
+            assertEquals(3, abs.invoke(generatedImpl, -3));
+
+            // released call sites throw instead of calling into the closed library
+            Panama.unload(libC);
+            final InvocationTargetException ex = assertThrows(InvocationTargetException.class, () -> abs.invoke(generatedImpl, -3));
+            assertInstanceOf(NativeException.class, ex.getCause());
+
+            // the generated class acquires the library again
+            final Object reloadedImpl = Panama.load(libC);
+            assertEquals(generatedImpl.getClass(), reloadedImpl.getClass());
+            assertEquals(3, abs.invoke(reloadedImpl, -3));
+            Panama.unload(libC);
+        }
+    }
+
+}
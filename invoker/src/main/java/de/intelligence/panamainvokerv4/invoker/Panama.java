@@ -5,9 +5,12 @@ import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.SegmentScope;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
 import de.intelligence.panamainvokerv4.invoker.proxy.IProxyManager;
+import de.intelligence.panamainvokerv4.invoker.reflection.GeneratedBindings;
 import de.intelligence.panamainvokerv4.invoker.reflection.ReflectionUtils;
 import de.intelligence.panamainvokerv4.invoker.converter.DefaultConverterRegistry;
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverterRegistry;
@@ -15,10 +18,12 @@ import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverterRegistry;
 public final class Panama {
 
     private static final Map<Class<? extends Annotation>, IProxyManager> MANAGERS;
+    private static final Map<Class<?>, LoadedInterface> INTERFACES;
     private static final ITypeConverterRegistry DEFAULT_CONVERTERS = new DefaultConverterRegistry();
 
     static {
         MANAGERS = new HashMap<>();
+        INTERFACES = new ConcurrentHashMap<>();
     }
 
     private Panama() {
@@ -31,18 +36,48 @@ public final class Panama {
         return (T) load(walker.getCallerClass());
     }
 
-    // load by interface parameter
+    // load by interface parameter, implementations are shared and every load has to be paired with an unload
     public static <T> T load(Class<T> interfaceClass) {
         if (!interfaceClass.isInterface()) {
             throw new NativeException("Class " + interfaceClass.getCanonicalName() + " must be an interface");
         }
+        return interfaceClass.cast(INTERFACES.compute(interfaceClass, (iC, loaded) -> {
+            if (loaded == null) {
+                return Panama.createImplementation(iC);
+            }
+            loaded.loadCount++;
+            return loaded;
+        }).instance);
+    }
+
+    // releases one load of the interface, the shared implementation and its library are released with the last one
+    public static void unload(Class<?> interfaceClass) {
+        INTERFACES.computeIfPresent(interfaceClass, (iC, loaded) -> {
+            if (--loaded.loadCount > 0) {
+                return loaded;
+            }
+            if (loaded.proxyManager != null) {
+                loaded.proxyManager.releaseProxy(iC);
+            } else {
+                GeneratedBindings.releaseImplementation(loaded.instance);
+            }
+            return null;
+        });
+    }
+
+    private static LoadedInterface createImplementation(Class<?> interfaceClass) {
+        // bindings emitted at compile time need no reflective setup
+        final Optional<Object> generated = GeneratedBindings.newImplementation(interfaceClass);
+        if (generated.isPresent()) {
+            return new LoadedInterface(generated.get(), null);
+        }
         final Class<? extends IProxyManager> proxyManagerClass = ReflectionUtils.getProxyManagerClass(interfaceClass);
         final Class<? extends Annotation> annotationClass = ReflectionUtils.getInterfaceAnnotation(interfaceClass).annotationType();
         final IProxyManager proxyManager;
         synchronized (MANAGERS) {
             proxyManager = MANAGERS.computeIfAbsent(annotationClass, aC -> ReflectionUtils.newInstance(proxyManagerClass));
         }
-        return interfaceClass.cast(proxyManager.createProxy(interfaceClass));
+        return new LoadedInterface(proxyManager.createProxy(interfaceClass), proxyManager);
     }
 
     public static ITypeConverterRegistry getNewConverters() {
@@ -53,4 +88,19 @@ public final class Panama {
         return SegmentAllocator.nativeAllocator(SegmentScope.auto());
     }
 
+    private static final class LoadedInterface {
+
+        private final Object instance;
+        private final IProxyManager proxyManager;
+        // only modified inside the compute functions of the map
+        private int loadCount;
+
+        private LoadedInterface(Object instance, IProxyManager proxyManager) {
+            this.instance = instance;
+            this.proxyManager = proxyManager;
+            this.loadCount = 1;
+        }
+
+    }
+
 }
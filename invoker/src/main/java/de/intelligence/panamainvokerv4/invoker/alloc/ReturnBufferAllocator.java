@@ -0,0 +1,36 @@
+package de.intelligence.panamainvokerv4.invoker.alloc;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.SegmentScope;
+
+/**
+ * Receives structures returned by value. Every allocation returns the same per-thread buffer, which only grows if a
+ * larger structure is returned, so the content has to be decoded before the next native call of the thread.
+ */
+public final class ReturnBufferAllocator implements SegmentAllocator {
+
+    public static final ReturnBufferAllocator INSTANCE = new ReturnBufferAllocator();
+
+    private static final long MIN_SIZE = 64;
+    private static final long MIN_ALIGNMENT = 16;
+    private static final ThreadLocal<MemorySegment[]> LOCAL = ThreadLocal.withInitial(() -> new MemorySegment[1]);
+
+    private ReturnBufferAllocator() {
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment) {
+        if (byteSize < 0 || byteAlignment < 1 || Long.bitCount(byteAlignment) != 1) {
+            throw new IllegalArgumentException("byteSize must be non-negative and byteAlignment must be a power of two");
+        }
+        final MemorySegment[] holder = LOCAL.get();
+        MemorySegment buffer = holder[0];
+        if (buffer == null || buffer.byteSize() < byteSize || buffer.address() % byteAlignment != 0) {
+            buffer = MemorySegment.allocateNative(Math.max(byteSize, MIN_SIZE), Math.max(byteAlignment, MIN_ALIGNMENT), SegmentScope.auto());
+            holder[0] = buffer;
+        }
+        return buffer.asSlice(0, byteSize);
+    }
+
+}
@@ -0,0 +1,92 @@
+package de.intelligence.panamainvokerv4.invoker.alloc;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.SegmentScope;
+import java.util.Arrays;
+
+/**
+ * Serves short-lived allocations from a per-thread native slab by bumping an offset. Scopes are opened with
+ * {@link #enter()} and closed with {@link #exit()}, which resets the offset in O(1). Requests which do not fit into
+ * the slab are served by an overflow arena that is closed once the outermost scope exits.
+ * <p>
+ * Instances are confined to their thread and segments must not be used after their scope was exited.
+ */
+public final class SlabSegmentAllocator implements SegmentAllocator {
+
+    public static final long DEFAULT_SLAB_SIZE = 16 * 1024;
+
+    private static final long SLAB_ALIGNMENT = 16;
+    private static final ThreadLocal<SlabSegmentAllocator> LOCAL = ThreadLocal.withInitial(() -> new SlabSegmentAllocator(DEFAULT_SLAB_SIZE));
+
+    private final long slabSize;
+    private MemorySegment slab;
+    private long offset;
+    private long[] marks;
+    private int depth;
+    private Arena overflow;
+
+    public SlabSegmentAllocator(long slabSize) {
+        if (slabSize <= 0) {
+            throw new IllegalArgumentException("slabSize must be positive");
+        }
+        this.slabSize = slabSize;
+        this.marks = new long[8];
+    }
+
+    public static SlabSegmentAllocator local() {
+        return LOCAL.get();
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment) {
+        if (byteSize < 0 || byteAlignment < 1 || Long.bitCount(byteAlignment) != 1) {
+            throw new IllegalArgumentException("byteSize must be non-negative and byteAlignment must be a power of two");
+        }
+        if (this.slab == null) {
+            // allocated lazily, threads which never marshal do not pay for a slab
+            this.slab = MemorySegment.allocateNative(this.slabSize, SLAB_ALIGNMENT, SegmentScope.auto());
+        }
+        final long base = this.slab.address();
+        final long start = ((base + this.offset + byteAlignment - 1) & -byteAlignment) - base;
+        if (start + byteSize <= this.slabSize) {
+            this.offset = start + byteSize;
+            return this.slab.asSlice(start, byteSize);
+        }
+        if (this.overflow == null) {
+            this.overflow = Arena.openConfined();
+        }
+        return this.overflow.allocate(byteSize, byteAlignment);
+    }
+
+    public long mark() {
+        return this.offset;
+    }
+
+    // the overflow belongs to the outermost scope, nested scopes must not free memory of enclosing ones
+    public void reset(long mark) {
+        this.offset = mark;
+        if (mark == 0 && this.depth == 0 && this.overflow != null) {
+            this.overflow.close();
+            this.overflow = null;
+        }
+    }
+
+    // scopes nest, e.g. for upcalls performing native calls themselves
+    public SlabSegmentAllocator enter() {
+        if (this.depth == this.marks.length) {
+            this.marks = Arrays.copyOf(this.marks, this.depth * 2);
+        }
+        this.marks[this.depth++] = this.mark();
+        return this;
+    }
+
+    public void exit() {
+        if (this.depth == 0) {
+            throw new IllegalStateException("No scope to exit");
+        }
+        this.reset(this.marks[--this.depth]);
+    }
+
+}
@@ -0,0 +1,23 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a functional interface whose instances are passed to native functions as function pointers.
+ * <p>
+ * <b>Every instance gets its own upcall stub on its first use, and the stub, together with a strong reference to the
+ * instance, is kept until it is released through {@code CallbackStubs.release(Object)}.</b> Stubs cannot be freed
+ * automatically because native code may still hold the function pointer. A capturing lambda created for every call,
+ * e.g. a comparator passed to {@code qsort}, therefore leaks a stub per call unless it is released after the call.
+ * Keep callbacks in fields and reuse them instead.
+ * <p>
+ * Callbacks return primitives or pointers. Other results, e.g. a {@code String}, would need native memory for every
+ * call of a long-lived stub and are rejected, return a pointer to memory owned by the caller instead.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Callback {
+}
@@ -0,0 +1,19 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a short, non-blocking native function whose call may skip the thread state transition.
+ * The function must not call back into java and must not be variadic.
+ * <p>
+ * This annotation is currently inert: the library is built for the java 20 preview of the FFM API, whose linker
+ * has no such option, so annotated functions are linked and called as usual. It only takes effect on a runtime
+ * providing {@code Linker.Option.isTrivial()} (java 21) or {@code Linker.Option.critical(boolean)} (java 22).
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Critical {
+}
@@ -0,0 +1,17 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores a primitive array field of a struct inline with the given number of elements, like {@code int data[16]} in C.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface FixedLength {
+
+    int value();
+
+}
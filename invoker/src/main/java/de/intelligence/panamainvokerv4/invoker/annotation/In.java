@@ -0,0 +1,15 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an array or structure parameter which is only read by the native function.
+ * Its content is passed to native code, but not copied back after the call.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface In {
+}
@@ -0,0 +1,15 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an array or structure parameter which is read and written by the native function.
+ * This is the default for parameters without a direction annotation.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface InOut {
+}
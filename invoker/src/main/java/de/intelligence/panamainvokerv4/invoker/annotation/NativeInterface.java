@@ -6,13 +6,16 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import de.intelligence.panamainvokerv4.invoker.annotation.meta.PanamaInterface;
-import de.intelligence.panamainvokerv4.invoker.proxy.NativeInterfaceProxyManager;
+import de.intelligence.panamainvokerv4.invoker.proxy.HiddenClassProxyManager;
 
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
-@PanamaInterface(NativeInterfaceProxyManager.class)
+@PanamaInterface(HiddenClassProxyManager.class)
 public @interface NativeInterface {
 
     String value();
 
+    // resolve symbols on the first call of each method instead of when loading the interface
+    boolean lazy() default false;
+
 }
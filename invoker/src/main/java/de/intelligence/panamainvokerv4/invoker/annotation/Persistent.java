@@ -0,0 +1,15 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a parameter whose native memory is kept by the native side after the call.
+ * Such arguments are not allocated in the temporary memory of the invocation and are freed by the garbage collector instead.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Persistent {
+}
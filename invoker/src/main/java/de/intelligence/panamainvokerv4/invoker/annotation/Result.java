@@ -0,0 +1,16 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the structure parameter which receives the structure a native function returns by value. The parameter
+ * is not passed to native code, the method decodes the result into it and returns it, so one structure can be
+ * reused across calls.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Result {
+}
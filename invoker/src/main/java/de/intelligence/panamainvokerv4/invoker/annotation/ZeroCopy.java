@@ -0,0 +1,19 @@
+package de.intelligence.panamainvokerv4.invoker.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests that primitive arrays are passed to native code as heap segments instead of being copied, either for a
+ * single parameter or for all array parameters of a method. This needs a linker which allows heap access in
+ * critical calls ({@code Linker.Option.critical(true)}, java 22).
+ * <p>
+ * This annotation is currently inert: the library is built for the java 20 preview of the FFM API, whose linker
+ * has no such option, so annotated arrays are always copied in and out like any other array.
+ */
+@Target({ElementType.PARAMETER, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ZeroCopy {
+}
@@ -0,0 +1,69 @@
+package de.intelligence.panamainvokerv4.invoker.converter;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
+import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
+
+/**
+ * Resolves the conversions of a converter as typed method handles. Converters without own handles are adapted
+ * through their object based methods.
+ */
+public final class ConverterHandles {
+
+    private static final MethodHandle GENERIC_TO_NATIVE;
+    private static final MethodHandle GENERIC_TO_JAVA;
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            GENERIC_TO_NATIVE = lookup.findStatic(ConverterHandles.class, "genericToNative", MethodType.methodType(Object.class,
+                    ITypeConverter.class, Class.class, SegmentAllocator.class, Object.class));
+            GENERIC_TO_JAVA = lookup.findStatic(ConverterHandles.class, "genericToJava", MethodType.methodType(Object.class,
+                    ITypeConverter.class, TypeConstructionContext.class, Object.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ConversionException("Failed to find necessary method: ", ex);
+        }
+    }
+
+    private ConverterHandles() {
+    }
+
+    // (SegmentAllocator, javaType)carrier
+    public static MethodHandle toNative(ITypeConverter converter, Class<?> javaType, Class<?> carrier) {
+        MethodHandle handle = converter.toNativeHandle(javaType);
+        if (handle == null) {
+            handle = MethodHandles.insertArguments(GENERIC_TO_NATIVE, 0, converter, javaType);
+        }
+        return handle.asType(MethodType.methodType(carrier, SegmentAllocator.class, javaType));
+    }
+
+    // (carrier)javaType
+    public static MethodHandle toJava(ITypeConverter converter, Class<?> javaType, Class<?> carrier) {
+        MethodHandle handle = converter.toJavaHandle(javaType);
+        if (handle == null) {
+            handle = MethodHandles.insertArguments(GENERIC_TO_JAVA, 0, converter, new TypeConstructionContext(javaType));
+        }
+        return handle.asType(MethodType.methodType(javaType, carrier));
+    }
+
+    // the java type a downcall handle uses for the given layout
+    public static Class<?> getCarrier(MemoryLayout layout) {
+        return layout instanceof ValueLayout valueLayout ? valueLayout.carrier() : MemorySegment.class;
+    }
+
+    private static Object genericToNative(ITypeConverter converter, Class<?> javaType, SegmentAllocator allocator, Object javaObj) {
+        return converter.toNative(javaObj, new TypeConstructionContext(javaType, allocator));
+    }
+
+    private static Object genericToJava(ITypeConverter converter, TypeConstructionContext context, Object nativeObj) {
+        return converter.toJava(nativeObj, context);
+    }
+
+}
@@ -1,9 +1,15 @@
 package de.intelligence.panamainvokerv4.invoker.converter;
 
+import java.util.Optional;
+
+import de.intelligence.panamainvokerv4.invoker.converter.instance.CallbackConverter;
 import de.intelligence.panamainvokerv4.invoker.converter.instance.TypeConverterRegistryBase;
 import de.intelligence.panamainvokerv4.invoker.converter.instance.PrimitiveArrayConverter;
 import de.intelligence.panamainvokerv4.invoker.converter.instance.PrimitiveConverter;
 import de.intelligence.panamainvokerv4.invoker.converter.instance.StringConverter;
+import de.intelligence.panamainvokerv4.invoker.converter.instance.StructureViewConverter;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureView;
+import de.intelligence.panamainvokerv4.invoker.util.CallbackStubs;
 
 public class DefaultConverterRegistry extends TypeConverterRegistryBase {
 
@@ -14,4 +20,17 @@ public class DefaultConverterRegistry extends TypeConverterRegistryBase {
         super.registerConverter(new PrimitiveArrayConverter());
     }
 
+    @Override
+    protected Optional<ITypeConverter> resolveConverter(Class<?> type) {
+        if (IStructureView.class.isAssignableFrom(type)) {
+            return Optional.of(new StructureViewConverter());
+        }
+        // implementations of callbacks, e.g. lambdas, share the converter of their interface
+        final Class<?> callbackInterface = CallbackStubs.getCallbackInterface(type);
+        if (callbackInterface != null) {
+            return Optional.of(new CallbackConverter(callbackInterface));
+        }
+        return Optional.empty();
+    }
+
 }
@@ -1,6 +1,7 @@
 package de.intelligence.panamainvokerv4.invoker.converter;
 
 import java.lang.foreign.MemoryLayout;
+import java.lang.invoke.MethodHandle;
 
 import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
 
@@ -12,4 +13,14 @@ public interface ITypeConverter {
 
     MemoryLayout getLayout(Class<?> javaClass);
 
+    // handle of a type convertible to (SegmentAllocator, javaClass)carrier, null if toNative has to be used
+    default MethodHandle toNativeHandle(Class<?> javaClass) {
+        return null;
+    }
+
+    // handle of a type convertible to (carrier)javaClass, null if toJava has to be used
+    default MethodHandle toJavaHandle(Class<?> javaClass) {
+        return null;
+    }
+
 }
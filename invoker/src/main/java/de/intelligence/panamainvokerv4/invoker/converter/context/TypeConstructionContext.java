@@ -1,15 +1,30 @@
 package de.intelligence.panamainvokerv4.invoker.converter.context;
 
+import java.lang.foreign.SegmentAllocator;
+
+import de.intelligence.panamainvokerv4.invoker.Panama;
+
 public class TypeConstructionContext {
 
     private final Class<?> originalType;
+    // allocator for native memory created by the conversion, scoped to the invocation for arguments
+    private final SegmentAllocator allocator;
 
     public TypeConstructionContext(Class<?> originalType) {
+        this(originalType, Panama.getNativeAllocator());
+    }
+
+    public TypeConstructionContext(Class<?> originalType, SegmentAllocator allocator) {
         this.originalType = originalType;
+        this.allocator = allocator;
     }
 
     public Class<?> getOriginalType() {
         return this.originalType;
     }
 
+    public SegmentAllocator getAllocator() {
+        return this.allocator;
+    }
+
 }
@@ -0,0 +1,56 @@
+package de.intelligence.panamainvokerv4.invoker.converter.instance;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
+import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
+import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
+import de.intelligence.panamainvokerv4.invoker.util.CallbackStubs;
+
+// callbacks are passed as the upcall stub of their instance
+public final class CallbackConverter implements ITypeConverter {
+
+    private static final MethodHandle TO_NATIVE;
+
+    static {
+        try {
+            TO_NATIVE = MethodHandles.lookup().findStatic(CallbackStubs.class, "get",
+                    MethodType.methodType(MemorySegment.class, Class.class, Object.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ConversionException("Failed to find necessary method: ", ex);
+        }
+    }
+
+    private final Class<?> callbackInterface;
+
+    public CallbackConverter(Class<?> callbackInterface) {
+        this.callbackInterface = callbackInterface;
+    }
+
+    @Override
+    public Object toNative(Object javaObj, TypeConstructionContext context) {
+        return CallbackStubs.get(this.callbackInterface, javaObj);
+    }
+
+    @Override
+    public Object toJava(Object nativeObj, TypeConstructionContext context) {
+        throw new ConversionException("Native function pointers cannot be converted to callback " + this.callbackInterface.getCanonicalName());
+    }
+
+    @Override
+    public MethodHandle toNativeHandle(Class<?> javaClass) {
+        return MethodHandles.dropArguments(TO_NATIVE.bindTo(this.callbackInterface), 0, SegmentAllocator.class);
+    }
+
+    @Override
+    public MemoryLayout getLayout(Class<?> clazz) {
+        return ValueLayout.ADDRESS;
+    }
+
+}
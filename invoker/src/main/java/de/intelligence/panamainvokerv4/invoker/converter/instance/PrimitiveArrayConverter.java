@@ -2,6 +2,7 @@ package de.intelligence.panamainvokerv4.invoker.converter.instance;
 
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
@@ -9,8 +10,8 @@ import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
-import de.intelligence.panamainvokerv4.invoker.Panama;
 import de.intelligence.panamainvokerv4.invoker.annotation.Converter;
 import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
 import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
@@ -21,6 +22,8 @@ public class PrimitiveArrayConverter extends PrimitiveConverter {
 
     private static final Map<Class<?>, MethodHandle> SEG_OF_ARRAY_HANDLES;
     private static final Map<Class<?>, MethodHandle> SEG_TO_ARRAY_HANDLES;
+    private static final MethodHandle IS_NULL;
+    private static final PrimitiveArrayConverter INSTANCE = new PrimitiveArrayConverter();
 
     static {
         SEG_OF_ARRAY_HANDLES = new HashMap<>();
@@ -41,11 +44,63 @@ public class PrimitiveArrayConverter extends PrimitiveConverter {
             SEG_TO_ARRAY_HANDLES.put(float.class, lookup.findVirtual(MemorySegment.class, "toArray", MethodType.methodType(float[].class, ValueLayout.OfFloat.class)));
             SEG_TO_ARRAY_HANDLES.put(double.class, lookup.findVirtual(MemorySegment.class, "toArray", MethodType.methodType(double[].class, ValueLayout.OfDouble.class)));
             SEG_TO_ARRAY_HANDLES.put(char.class, lookup.findVirtual(MemorySegment.class, "toArray", MethodType.methodType(char[].class, ValueLayout.OfChar.class)));
+            IS_NULL = lookup.findStatic(Objects.class, "isNull", MethodType.methodType(boolean.class, Object.class));
         } catch (ReflectiveOperationException ex) {
             throw new ConversionException("Failed to find necessary method: ", ex);
         }
     }
 
+    // heap segment viewing the array itself, only primitive arrays are supported
+    public static MemorySegment heapSegment(Object array) {
+        if (array == null) {
+            return MemorySegment.NULL;
+        }
+        try {
+            return (MemorySegment) SEG_OF_ARRAY_HANDLES.get(array.getClass().getComponentType()).invoke(array);
+        } catch (Throwable ex) {
+            throw new ConversionException("Failed to view array as segment: " + array.getClass().getCanonicalName(), ex);
+        }
+    }
+
+    // (arrayType)MemorySegment handle of heapSegment, null arrays are passed as NULL
+    public static MethodHandle heapSegmentHandle(Class<?> arrayType) {
+        final MethodHandle ofArray = SEG_OF_ARRAY_HANDLES.get(arrayType.getComponentType());
+        if (ofArray == null) {
+            throw new ConversionException("Not a primitive array: " + arrayType.getCanonicalName());
+        }
+        return MethodHandles.guardWithTest(IS_NULL.asType(MethodType.methodType(boolean.class, arrayType)),
+                MethodHandles.dropArguments(MethodHandles.constant(MemorySegment.class, MemorySegment.NULL), 0, arrayType),
+                ofArray);
+    }
+
+    // native buffer matching the array, its content is left to the native side
+    public static MemorySegment allocate(Object array, SegmentAllocator allocator) {
+        if (array == null) {
+            return MemorySegment.NULL;
+        }
+        return allocator.allocateArray(INSTANCE.getComponentLayout(array.getClass()), Array.getLength(array));
+    }
+
+    // copies the content of the native buffer back into the array
+    public static void copyBack(MemorySegment segment, Object array) {
+        if (array == null) {
+            return;
+        }
+        final Class<?> componentType = array.getClass().getComponentType();
+        final ValueLayout componentLayout = INSTANCE.getComponentLayout(array.getClass());
+        final int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            MemorySegment.copy(segment, componentLayout, 0, array, 0, length);
+            return;
+        }
+        // boxed arrays have no memory layout of their own
+        final Object primitives = Array.newInstance(componentLayout.carrier(), length);
+        MemorySegment.copy(segment, componentLayout, 0, primitives, 0, length);
+        for (int i = 0; i < length; i++) {
+            Array.set(array, i, Array.get(primitives, i));
+        }
+    }
+
     @Override
     public Object toNative(Object javaObj, TypeConstructionContext context) {
         if (javaObj == null) {
@@ -55,9 +110,7 @@ public class PrimitiveArrayConverter extends PrimitiveConverter {
         if (!componentType.isPrimitive()) {
             componentType = super.getPrimitive(componentType);
         }
-        final MemoryLayout componentLayout = super.getLayout(componentType);
-        final int arrLen = Array.getLength(javaObj);
-        final MemorySegment arrAlloc = Panama.getNativeAllocator().allocateArray(componentLayout, arrLen);
+        final MemorySegment arrAlloc = PrimitiveArrayConverter.allocate(javaObj, context.getAllocator());
         try {
             arrAlloc.copyFrom((MemorySegment) SEG_OF_ARRAY_HANDLES.get(componentType).invoke(javaObj));
         } catch (Throwable ex) {
@@ -94,9 +147,24 @@ public class PrimitiveArrayConverter extends PrimitiveConverter {
         }
     }
 
+    @Override
+    public MethodHandle toNativeHandle(Class<?> javaClass) {
+        // arrays are copied back after the call, which needs the object based path
+        return null;
+    }
+
+    @Override
+    public MethodHandle toJavaHandle(Class<?> javaClass) {
+        return null;
+    }
+
     @Override
     public MemoryLayout getLayout(Class<?> clazz) {
         return ValueLayout.ADDRESS;
     }
 
+    private ValueLayout getComponentLayout(Class<?> arrayType) {
+        return (ValueLayout) super.getLayout(super.getPrimitive(arrayType.getComponentType()));
+    }
+
 }
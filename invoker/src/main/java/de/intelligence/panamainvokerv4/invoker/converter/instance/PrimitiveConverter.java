@@ -1,7 +1,11 @@
 package de.intelligence.panamainvokerv4.invoker.converter.instance;
 
 import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
 import de.intelligence.panamainvokerv4.invoker.annotation.Converter;
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
@@ -22,6 +26,20 @@ public class PrimitiveConverter implements ITypeConverter {
         return nativeObj;
     }
 
+    @Override
+    public MethodHandle toNativeHandle(Class<?> javaClass) {
+        final Class<?> primitive = this.getPrimitive(javaClass);
+        // plain (un)boxing, no conversion call remains in the compiled handle
+        return MethodHandles.dropArguments(MethodHandles.identity(primitive), 0, SegmentAllocator.class)
+                .asType(MethodType.methodType(primitive, SegmentAllocator.class, javaClass));
+    }
+
+    @Override
+    public MethodHandle toJavaHandle(Class<?> javaClass) {
+        final Class<?> primitive = this.getPrimitive(javaClass);
+        return MethodHandles.identity(primitive).asType(MethodType.methodType(javaClass, primitive));
+    }
+
     @Override
     public MemoryLayout getLayout(Class<?> clazz) {
         if (!clazz.isPrimitive()) {
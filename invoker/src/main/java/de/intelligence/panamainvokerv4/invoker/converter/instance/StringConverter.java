@@ -2,24 +2,53 @@ package de.intelligence.panamainvokerv4.invoker.converter.instance;
 
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
-import de.intelligence.panamainvokerv4.invoker.Panama;
 import de.intelligence.panamainvokerv4.invoker.annotation.Converter;
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
 import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
+import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
 
 @Converter(String.class)
 public class StringConverter implements ITypeConverter {
 
+    private static final MethodHandle ALLOCATE_STRING;
+    private static final MethodHandle READ_STRING;
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            ALLOCATE_STRING = lookup.findStatic(StringConverter.class, "allocateString",
+                    MethodType.methodType(MemorySegment.class, SegmentAllocator.class, String.class));
+            READ_STRING = lookup.findStatic(StringConverter.class, "readString",
+                    MethodType.methodType(String.class, MemorySegment.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ConversionException("Failed to find necessary method: ", ex);
+        }
+    }
+
     @Override
     public Object toNative(Object javaObj, TypeConstructionContext context) {
-        return Panama.getNativeAllocator().allocateUtf8String((String) javaObj);
+        return StringConverter.allocateString(context.getAllocator(), (String) javaObj);
     }
 
     @Override
     public Object toJava(Object nativeObj, TypeConstructionContext context) {
-        return MemorySegment.ofAddress((long) nativeObj).getUtf8String(0);
+        return StringConverter.readString(nativeObj instanceof MemorySegment segment ? segment : MemorySegment.ofAddress((long) nativeObj));
+    }
+
+    @Override
+    public MethodHandle toNativeHandle(Class<?> javaClass) {
+        return ALLOCATE_STRING;
+    }
+
+    @Override
+    public MethodHandle toJavaHandle(Class<?> javaClass) {
+        return READ_STRING;
     }
 
     @Override
@@ -27,4 +56,16 @@ public class StringConverter implements ITypeConverter {
         return ValueLayout.ADDRESS;
     }
 
+    private static MemorySegment allocateString(SegmentAllocator allocator, String str) {
+        return str == null ? MemorySegment.NULL : allocator.allocateUtf8String(str);
+    }
+
+    private static String readString(MemorySegment segment) {
+        if (segment.address() == 0) {
+            return null;
+        }
+        // returned addresses are zero-length segments
+        return MemorySegment.ofAddress(segment.address(), Long.MAX_VALUE).getUtf8String(0);
+    }
+
 }
@@ -0,0 +1,73 @@
+package de.intelligence.panamainvokerv4.invoker.converter.instance;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
+import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
+import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureView;
+
+// struct views are always passed by reference, so only their segment crosses the boundary
+public final class StructureViewConverter implements ITypeConverter {
+
+    private static final MethodHandle TO_NATIVE;
+    private static final MethodHandle TO_JAVA;
+
+    static {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            TO_NATIVE = lookup.findStatic(StructureViewConverter.class, "toNative",
+                    MethodType.methodType(MemorySegment.class, SegmentAllocator.class, IStructureView.class));
+            TO_JAVA = lookup.findStatic(StructureViewConverter.class, "toJava",
+                    MethodType.methodType(IStructureView.class, Class.class, MemorySegment.class));
+        } catch (ReflectiveOperationException ex) {
+            throw new ConversionException("Failed to find necessary method: ", ex);
+        }
+    }
+
+    @Override
+    public Object toNative(Object javaObj, TypeConstructionContext context) {
+        return javaObj == null ? MemorySegment.NULL : ((IStructureView) javaObj).segment();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object toJava(Object nativeObj, TypeConstructionContext context) {
+        return StructureViewConverter.toJava((Class<? extends IStructureView>) context.getOriginalType(), (MemorySegment) nativeObj);
+    }
+
+    @Override
+    public MethodHandle toNativeHandle(Class<?> javaClass) {
+        return TO_NATIVE;
+    }
+
+    @Override
+    public MethodHandle toJavaHandle(Class<?> javaClass) {
+        return TO_JAVA.bindTo(javaClass);
+    }
+
+    @Override
+    public MemoryLayout getLayout(Class<?> clazz) {
+        return ValueLayout.ADDRESS;
+    }
+
+    private static MemorySegment toNative(SegmentAllocator allocator, IStructureView view) {
+        return view == null ? MemorySegment.NULL : view.segment();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IStructureView toJava(Class<?> viewClass, MemorySegment segment) {
+        if (segment.address() == 0) {
+            return null;
+        }
+        final Class<? extends IStructureView> type = (Class<? extends IStructureView>) viewClass;
+        return IStructureView.of(type, MemorySegment.ofAddress(segment.address(), IStructureView.layoutOf(type).byteSize()));
+    }
+
+}
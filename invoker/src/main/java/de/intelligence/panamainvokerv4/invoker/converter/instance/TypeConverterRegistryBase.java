@@ -1,9 +1,15 @@
 package de.intelligence.panamainvokerv4.invoker.converter.instance;
 
 import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.locks.ReentrantLock;
 
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
@@ -14,14 +20,43 @@ import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverterRegistry;
 import de.intelligence.panamainvokerv4.invoker.exception.ConversionException;
 import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
 
+/**
+ * Resolves converters without locking. Registrations publish an immutable snapshot, resolved converters are
+ * cached per type in a {@link ClassValue} which is invalidated for the types of every new registration.
+ */
 public abstract class TypeConverterRegistryBase implements ITypeConverterRegistry {
-    
-    private final Map<Class<?>, ITypeConverter> classToTypeConverter;
+
     private final ReentrantLock lock;
+    private final ClassValue<Optional<ITypeConverter>> resolved;
+    private volatile Map<Class<?>, ITypeConverter> classToTypeConverter;
 
     protected TypeConverterRegistryBase() {
-        this.classToTypeConverter = new HashMap<>();
         this.lock = new ReentrantLock();
+        this.classToTypeConverter = Map.of();
+        this.resolved = new ClassValue<>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            protected Optional<ITypeConverter> computeValue(Class<?> type) {
+                final ITypeConverter converter = TypeConverterRegistryBase.this.classToTypeConverter.get(type);
+                if (converter != null) {
+                    return Optional.of(converter);
+                }
+                final Optional<ITypeConverter> derived = TypeConverterRegistryBase.this.resolveConverter(type);
+                if (derived.isPresent()) {
+                    return derived;
+                }
+                if (NativeType.class.isAssignableFrom(type)) {
+                    // created once per type
+                    return Optional.of(new NativeTypeConverter((Class<NativeType>) type));
+                }
+                return Optional.empty();
+            }
+        };
+    }
+
+    // converters for types without a registration of their own, e.g. resolved from the type hierarchy
+    protected Optional<ITypeConverter> resolveConverter(Class<?> type) {
+        return Optional.empty();
     }
 
     @Override
@@ -34,11 +69,16 @@ public abstract class TypeConverterRegistryBase implements ITypeConverterRegistr
         final Class<?>[] supportedTypes = converterClass.getAnnotation(Converter.class).value();
         this.lock.lock();
         try {
+            final Map<Class<?>, ITypeConverter> updated = new HashMap<>(this.classToTypeConverter);
             for (final Class<?> supportedType : supportedTypes) {
-                if (this.classToTypeConverter.containsKey(supportedType)) {
+                if (updated.containsKey(supportedType)) {
                     throw new ConversionException("Tried to register an already present conversion type: " + supportedType.getCanonicalName());
                 }
-                this.classToTypeConverter.put(supportedType, converter);
+                updated.put(supportedType, converter);
+            }
+            this.classToTypeConverter = Map.copyOf(updated);
+            for (final Class<?> supportedType : supportedTypes) {
+                this.resolved.remove(supportedType);
             }
         } finally {
             this.lock.unlock();
@@ -46,37 +86,14 @@ public abstract class TypeConverterRegistryBase implements ITypeConverterRegistr
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public boolean isConverterAvailable(Class<?> type) {
-        this.lock.lock();
-        try {
-            if (NativeType.class.isAssignableFrom(type)) {
-                this.classToTypeConverter.put(type, new NativeTypeConverter((Class<NativeType>) type));
-                return true;
-            }
-            return this.classToTypeConverter.containsKey(type);
-        } finally {
-            this.lock.unlock();
-        }
+        return this.resolved.get(type).isPresent();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public final ITypeConverter getConverterInstance(Class<?> type) {
-        this.lock.lock();
-        try {
-            if (!this.classToTypeConverter.containsKey(type)) {
-                if (NativeType.class.isAssignableFrom(type)) {
-                    final ITypeConverter converter = new NativeTypeConverter((Class<NativeType>) type);
-                    this.classToTypeConverter.put(type, converter);
-                    return converter;
-                }
-                throw new ConversionException("No type converter found for " + type.getCanonicalName());
-            }
-            return this.classToTypeConverter.get(type);
-        } finally {
-            this.lock.unlock();
-        }
+        return this.resolved.get(type)
+                .orElseThrow(() -> new ConversionException("No type converter found for " + type.getCanonicalName()));
     }
 
     @Override
@@ -96,6 +113,20 @@ public abstract class TypeConverterRegistryBase implements ITypeConverterRegistr
 
     public static final class NativeTypeConverter implements ITypeConverter {
 
+        private static final MethodHandle TO_NATIVE;
+        private static final MethodHandle TO_JAVA;
+
+        static {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                TO_NATIVE = lookup.findStatic(NativeTypeConverter.class, "toNative",
+                        MethodType.methodType(Object.class, SegmentAllocator.class, NativeType.class));
+                TO_JAVA = lookup.findVirtual(NativeType.class, "toJava", MethodType.methodType(Object.class, Object.class));
+            } catch (ReflectiveOperationException ex) {
+                throw new ConversionException("Failed to find necessary method: ", ex);
+            }
+        }
+
         private final NativeType instance;
 
         public <T extends NativeType> NativeTypeConverter(Class<T> type) {
@@ -104,7 +135,7 @@ public abstract class TypeConverterRegistryBase implements ITypeConverterRegistr
 
         @Override
         public Object toNative(Object javaObj, TypeConstructionContext context) {
-            return ((NativeType) javaObj).toNative();
+            return ((NativeType) javaObj).toNative(context.getAllocator());
         }
 
         @Override
@@ -112,11 +143,25 @@ public abstract class TypeConverterRegistryBase implements ITypeConverterRegistr
             return this.instance.toJava(nativeObj);
         }
 
+        @Override
+        public MethodHandle toNativeHandle(Class<?> javaClass) {
+            return TO_NATIVE;
+        }
+
+        @Override
+        public MethodHandle toJavaHandle(Class<?> javaClass) {
+            return TO_JAVA.bindTo(this.instance);
+        }
+
         @Override
         public MemoryLayout getLayout(Class<?> clazz) {
             return this.instance.getLayout();
         }
 
+        private static Object toNative(SegmentAllocator allocator, NativeType nativeType) {
+            return nativeType == null ? MemorySegment.NULL : nativeType.toNative(allocator);
+        }
+
     }
 
 }
@@ -0,0 +1,124 @@
+package de.intelligence.panamainvokerv4.invoker.library;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+
+/**
+ * Binds the call sites of an implementation generated at compile time to its shared library. The library is acquired
+ * by the first instance of the implementation and released with the last one, in between the call sites are linked
+ * to its functions. Released call sites throw, so the implementation can be used again once it is acquired anew.
+ */
+public final class LibraryBinding {
+
+    private static final MethodHandle BIND;
+    private static final MethodHandle RELEASED;
+
+    static {
+        try {
+            BIND = MethodHandles.lookup().findVirtual(LibraryBinding.class, "bind",
+                    MethodType.methodType(Object.class, NativeLibrary.class, int.class, Object[].class));
+            RELEASED = MethodHandles.lookup().findVirtual(LibraryBinding.class, "released",
+                    MethodType.methodType(Object.class, Object[].class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            // should never happen
+            throw new NativeException("Failed to find method handle", ex);
+        }
+    }
+
+    private final String libraryName;
+    private final boolean lazy;
+    private final Binder binder;
+    private final MutableCallSite[] callSites;
+    // guarded by this, the library is null while it is released
+    private int instances;
+    private NativeLibrary nativeLibrary;
+
+    public LibraryBinding(String libraryName, boolean lazy, Binder binder, MutableCallSite... callSites) {
+        this.libraryName = libraryName;
+        this.lazy = lazy;
+        this.binder = binder;
+        this.callSites = callSites;
+        this.unbind();
+    }
+
+    public synchronized void acquire() {
+        if (this.instances++ > 0) {
+            return;
+        }
+        final NativeLibrary nativeLibrary = LibraryRegistry.acquire(this.libraryName);
+        try {
+            for (int i = 0; i < this.callSites.length; i++) {
+                final MutableCallSite callSite = this.callSites[i];
+                callSite.setTarget(this.lazy ? MethodHandles.insertArguments(BIND.bindTo(this), 0, nativeLibrary, i)
+                        .asCollector(Object[].class, callSite.type().parameterCount()).asType(callSite.type())
+                        : this.binder.bind(nativeLibrary, i).asType(callSite.type()));
+            }
+        } catch (RuntimeException ex) {
+            this.instances--;
+            this.unbind();
+            LibraryRegistry.release(this.libraryName);
+            throw ex;
+        }
+        this.nativeLibrary = nativeLibrary;
+        MutableCallSite.syncAll(this.callSites);
+    }
+
+    public synchronized void release() {
+        if (this.instances == 0) {
+            throw new NativeException("Library " + this.libraryName + " is not acquired");
+        }
+        if (--this.instances > 0) {
+            return;
+        }
+        this.nativeLibrary = null;
+        this.unbind();
+        LibraryRegistry.release(this.libraryName);
+    }
+
+    private void unbind() {
+        for (final MutableCallSite callSite : this.callSites) {
+            callSite.setTarget(RELEASED.bindTo(this).asCollector(Object[].class, callSite.type().parameterCount())
+                    .asType(callSite.type()));
+        }
+        MutableCallSite.syncAll(this.callSites);
+    }
+
+    // binds the function on its first call and then relinks the call site to the bound handle
+    private Object bind(NativeLibrary nativeLibrary, int index, Object[] args) throws Throwable {
+        final MutableCallSite callSite = this.callSites[index];
+        if (!this.isBound(nativeLibrary)) {
+            // the library was released or reacquired since the call site was linked
+            return callSite.dynamicInvoker().invokeWithArguments(args);
+        }
+        // concurrent first calls bind the same function, missing symbols are reported here
+        final MethodHandle target = this.binder.bind(nativeLibrary, index).asType(callSite.type());
+        final boolean bound;
+        synchronized (this) {
+            bound = this.nativeLibrary == nativeLibrary;
+            if (bound) {
+                callSite.setTarget(target);
+            }
+        }
+        return (bound ? target : callSite.dynamicInvoker()).invokeWithArguments(args);
+    }
+
+    private synchronized boolean isBound(NativeLibrary nativeLibrary) {
+        return this.nativeLibrary == nativeLibrary;
+    }
+
+    private Object released(Object[] args) {
+        throw new NativeException("Library " + this.libraryName + " was released");
+    }
+
+    @FunctionalInterface
+    public interface Binder {
+
+        MethodHandle bind(NativeLibrary nativeLibrary, int index);
+
+    }
+
+}
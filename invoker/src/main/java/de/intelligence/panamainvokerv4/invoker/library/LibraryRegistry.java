@@ -0,0 +1,74 @@
+package de.intelligence.panamainvokerv4.invoker.library;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.SymbolLookup;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide registry of native libraries. Every library is opened once per name and shared by all its users,
+ * it is unloaded when the last user released it.
+ */
+public final class LibraryRegistry {
+
+    private static final Map<String, Entry> LIBRARIES;
+
+    static {
+        LIBRARIES = new ConcurrentHashMap<>();
+    }
+
+    private LibraryRegistry() {
+    }
+
+    public static NativeLibrary acquire(String libraryName) {
+        return LIBRARIES.compute(libraryName, (n, entry) -> {
+            if (entry == null) {
+                return new Entry(LibraryRegistry.open(n));
+            }
+            entry.refCount++;
+            return entry;
+        }).library;
+    }
+
+    public static void release(String libraryName) {
+        LIBRARIES.computeIfPresent(libraryName, (n, entry) -> {
+            if (--entry.refCount > 0) {
+                return entry;
+            }
+            entry.library.close();
+            return null;
+        });
+    }
+
+    public static boolean isLoaded(String libraryName) {
+        return LIBRARIES.containsKey(libraryName);
+    }
+
+    private static NativeLibrary open(String libraryName) {
+        if (NativeLibrary.isDefaultLibrary(libraryName)) {
+            return new NativeLibrary(libraryName, Linker.nativeLinker().defaultLookup(), null);
+        }
+        final Arena arena = Arena.openShared();
+        try {
+            return new NativeLibrary(libraryName, SymbolLookup.libraryLookup(libraryName, arena.scope()), arena);
+        } catch (RuntimeException ex) {
+            arena.close();
+            throw ex;
+        }
+    }
+
+    private static final class Entry {
+
+        private final NativeLibrary library;
+        // only modified inside the compute functions of the map
+        private int refCount;
+
+        private Entry(NativeLibrary library) {
+            this.library = library;
+            this.refCount = 1;
+        }
+
+    }
+
+}
@@ -4,24 +4,31 @@ import java.lang.foreign.MemorySegment;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
+import de.intelligence.panamainvokerv4.invoker.proxy.FunctionBindings;
 import de.intelligence.panamainvokerv4.invoker.type.Pointer;
 import de.intelligence.panamainvokerv4.invoker.util.DynamicMethodHandle;
 
 public final class NativeFunction extends Pointer {
 
+    private static final Object[] NO_ARGS = new Object[0];
+
     private final Method method;
     private final String name;
+    // linked once for bound methods, raw function pointers are resolved per signature
+    private final DynamicMethodHandle handle;
 
     public NativeFunction(MemorySegment segment, Method method) {
         super(segment);
         this.method = method;
         this.name = method.getName();
+        this.handle = DynamicMethodHandle.auto(segment, method);
     }
 
     public NativeFunction(Pointer funcPtr) {
         super(funcPtr.getSegment());
         this.method = null;
         this.name = funcPtr.toString();
+        this.handle = null;
     }
 
     public static NativeFunction fromAddress(Pointer funcPtr) {
@@ -33,20 +40,29 @@ public final class NativeFunction extends Pointer {
     }
 
     public Object invoke(Class<?> retType, Object... args) {
-        final Object[] argsCopy = new Object[args == null ? 0 : args.length];
-        Class<?>[] classTypes = new Class[argsCopy.length];
-        if (args != null) {
-            System.arraycopy(args, 0, argsCopy, 0, args.length);
-            classTypes = Arrays.stream(argsCopy).map(Object::getClass).toArray(Class<?>[]::new);
-        }
-        if (this.method != null) {
-            return DynamicMethodHandle.auto(super.segment, this.method).invokeWithArguments(argsCopy);
+        if (this.handle != null) {
+            return this.handle.invokeWithArguments(args == null ? NO_ARGS : args);
         }
-        return DynamicMethodHandle.auto(this.segment, this.name, retType, classTypes, false).invokeWithArguments(argsCopy);
+        final Object[] arguments = args == null ? NO_ARGS : args;
+        final Class<?>[] classTypes = Arrays.stream(arguments).map(Object::getClass).toArray(Class<?>[]::new);
+        return DynamicMethodHandle.auto(this.segment, this.name, retType, classTypes, false).invokeWithArguments(arguments);
+    }
+
+    // links the pointer once against the single abstract method, the returned instance can be called repeatedly
+    public <F> F bind(Class<F> functionalInterface) {
+        return FunctionBindings.bind(functionalInterface, this.segment);
     }
 
     public String getName() {
         return this.name;
     }
 
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public DynamicMethodHandle getHandle() {
+        return this.handle;
+    }
+
 }
@@ -1,34 +1,45 @@
 package de.intelligence.panamainvokerv4.invoker.library;
 
+import java.lang.foreign.Arena;
 import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.SegmentScope;
 import java.lang.foreign.SymbolLookup;
 import java.lang.reflect.Method;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.util.DynamicMethodHandle;
 
 public final class NativeLibrary {
 
     private final Map<Method, NativeFunction> functions;
     private final String libraryName;
     private final SymbolLookup symbolLookup;
+    // owned by the library if it was opened through the LibraryRegistry
+    private final Arena arena;
 
     public NativeLibrary(String libraryName, SegmentScope segmentScope) {
-        this.functions = new HashMap<>();
+        this(libraryName, NativeLibrary.isDefaultLibrary(libraryName)
+                ? Linker.nativeLinker().defaultLookup() : SymbolLookup.libraryLookup(libraryName, segmentScope), null);
+    }
+
+    NativeLibrary(String libraryName, SymbolLookup symbolLookup, Arena arena) {
+        this.functions = new ConcurrentHashMap<>();
         this.libraryName = libraryName;
-        if ("c".equals(libraryName) || "stdlib".equals(libraryName)) {
-            this.symbolLookup = Linker.nativeLinker().defaultLookup();
-        } else {
-            this.symbolLookup = SymbolLookup.libraryLookup(libraryName, segmentScope);
-        }
+        this.symbolLookup = symbolLookup;
+        this.arena = arena;
+    }
+
+    static boolean isDefaultLibrary(String libraryName) {
+        return "c".equals(libraryName) || "stdlib".equals(libraryName);
     }
 
-    public void registerMethod(Method method) {
+    // binds the method once, safe to be called concurrently and repeatedly, e.g. by lazily bound interfaces
+    public NativeFunction registerMethod(Method method) {
         // TODO maybe auto convert method names and create something more abstract like a FunctionCreator
-        this.functions.put(method, new NativeFunction(this.findSymbol(method.getName()), method));
+        return this.functions.computeIfAbsent(method, m -> new NativeFunction(this.findSymbol(m.getName()), m));
     }
 
     public MemorySegment findSymbol(String name) {
@@ -37,10 +48,23 @@ public final class NativeLibrary {
     }
 
     public NativeFunction getFunction(Method method) {
-        if (!this.functions.containsKey(method)) {
+        final NativeFunction function = this.functions.get(method);
+        if (function == null) {
             throw new NativeException("No native function for method " + method + " found in library " + this.libraryName);
         }
-        return this.functions.get(method);
+        return function;
+    }
+
+    public String getLibraryName() {
+        return this.libraryName;
+    }
+
+    void close() {
+        if (this.arena != null) {
+            // cached handles would otherwise outlive the library
+            DynamicMethodHandle.getHandleCache().invalidate(this.arena.scope());
+            this.arena.close();
+        }
     }
 
 }
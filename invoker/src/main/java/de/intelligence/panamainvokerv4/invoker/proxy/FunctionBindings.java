@@ -0,0 +1,139 @@
+package de.intelligence.panamainvokerv4.invoker.proxy;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.reflection.ClassFileWriter;
+import de.intelligence.panamainvokerv4.invoker.util.DynamicMethodHandle;
+
+/**
+ * Implements functional interfaces on top of raw function pointers. Every bound pointer gets its own hidden class
+ * which keeps the linked handle in a static final field, like a loaded native interface, so calls through it are
+ * inlined no matter where the bound object is stored. Binding defines a class, pointers should be bound once and
+ * the result kept.
+ */
+public final class FunctionBindings {
+
+    private static final String METHOD_HANDLE = ClassFileWriter.internalName(MethodHandle.class);
+    private static final String METHOD_HANDLES = ClassFileWriter.internalName(MethodHandles.class);
+
+    private static final ClassValue<Binding> BINDINGS = new ClassValue<>() {
+        @Override
+        protected Binding computeValue(Class<?> type) {
+            return Binding.of(type);
+        }
+    };
+
+    private FunctionBindings() {
+    }
+
+    public static <F> F bind(Class<F> functionalInterface, MemorySegment function) {
+        if (function.address() == 0) {
+            throw new NativeException("Cannot bind the null pointer to " + functionalInterface.getCanonicalName());
+        }
+        final Binding binding = BINDINGS.get(functionalInterface);
+        final MethodHandle handle = DynamicMethodHandle.auto(function, binding.method).getMethodHandle().asType(binding.type);
+        if (binding.lookup == null) {
+            return MethodHandleProxies.asInterfaceInstance(functionalInterface, handle);
+        }
+        try {
+            // not strongly linked to the interface, the class is unloaded together with the bound object
+            final MethodHandles.Lookup implLookup = binding.lookup.defineHiddenClassWithClassData(binding.bytes, handle, true);
+            return functionalInterface.cast(implLookup.findConstructor(implLookup.lookupClass(),
+                    MethodType.methodType(void.class)).invoke());
+        } catch (Throwable ex) {
+            throw new NativeException("Failed to bind function pointer to " + functionalInterface.getCanonicalName(), ex);
+        }
+    }
+
+    // the single abstract method, public methods of Object redeclared by the interface do not count
+    public static Method getFunctionMethod(Class<?> functionalInterface) {
+        if (!functionalInterface.isInterface()) {
+            throw new NativeException(functionalInterface.getCanonicalName() + " is not an interface");
+        }
+        final List<Method> methods = Arrays.stream(functionalInterface.getMethods())
+                .filter(m -> Modifier.isAbstract(m.getModifiers()) && !FunctionBindings.isObjectMethod(m))
+                .toList();
+        if (methods.size() != 1) {
+            throw new NativeException(functionalInterface.getCanonicalName() + " needs exactly one abstract method");
+        }
+        return methods.get(0);
+    }
+
+    private static boolean isObjectMethod(Method method) {
+        try {
+            Object.class.getMethod(method.getName(), method.getParameterTypes());
+            return true;
+        } catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    // lookup defining the classes of bound pointers, null if the interface has to be served by a proxy
+    private record Binding(Method method, MethodType type, MethodHandles.Lookup lookup, byte[] bytes) {
+
+        private static Binding of(Class<?> functionalInterface) {
+            final Method method = FunctionBindings.getFunctionMethod(functionalInterface);
+            final MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+            final MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(functionalInterface, MethodHandles.lookup());
+            } catch (IllegalAccessException ex) {
+                // the package of the interface is not open to us
+                return new Binding(method, type, null, null);
+            }
+            if (!lookup.hasFullPrivilegeAccess()) {
+                // interfaces in other named modules are opened without module access, which defining hidden classes needs
+                return new Binding(method, type, null, null);
+            }
+            return new Binding(method, type, lookup, FunctionBindings.generate(functionalInterface, method, type));
+        }
+
+    }
+
+    private static byte[] generate(Class<?> functionalInterface, Method method, MethodType type) {
+        final String implName = ClassFileWriter.internalName(functionalInterface) + "$PanamaFunction";
+        final ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+                | ClassFileWriter.ACC_SUPER | ClassFileWriter.ACC_SYNTHETIC, implName, "java/lang/Object",
+                ClassFileWriter.internalName(functionalInterface));
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL, "handle",
+                MethodHandle.class.descriptorString());
+
+        // static initializer moves the class data handle into the static final field
+        writer.method(ClassFileWriter.ACC_STATIC, "<clinit>", MethodType.methodType(void.class))
+                .invokeStatic(METHOD_HANDLES, "lookup", MethodType.methodType(MethodHandles.Lookup.class), false)
+                .ldc("_")
+                .ldc(MethodHandle.class)
+                .invokeStatic(METHOD_HANDLES, "classData",
+                        MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class), false)
+                .checkcast(MethodHandle.class)
+                .putStatic(implName, "handle", MethodHandle.class)
+                .returnValue(void.class);
+
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", MethodType.methodType(void.class))
+                .load(Object.class, 0)
+                .invokeSpecial("java/lang/Object", "<init>", MethodType.methodType(void.class))
+                .returnValue(void.class);
+
+        final ClassFileWriter.Code code = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                method.getName(), type);
+        code.getStatic(implName, "handle", MethodHandle.class);
+        code.loadAll(type, 1);
+        code.invokeVirtual(METHOD_HANDLE, "invokeExact", type)
+                .returnValue(type.returnType());
+
+        writer.method(ClassFileWriter.ACC_PUBLIC, "toString", MethodType.methodType(String.class))
+                .ldc(functionalInterface.getCanonicalName() + "$PanamaFunction")
+                .returnValue(String.class);
+        return writer.toByteArray();
+    }
+
+}
@@ -0,0 +1,166 @@
+package de.intelligence.panamainvokerv4.invoker.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.library.NativeLibrary;
+import de.intelligence.panamainvokerv4.invoker.reflection.ClassFileWriter;
+
+/**
+ * Implements native interfaces with a hidden class per interface. Every interface method calls a static final
+ * method handle through invokeExact, which lets the JIT inline the whole call down to the native stub.
+ * Interfaces which cannot be implemented that way are served by the {@link NativeInterfaceProxyManager}.
+ */
+public final class HiddenClassProxyManager implements IProxyManager {
+
+    private static final String METHOD_HANDLE = ClassFileWriter.internalName(MethodHandle.class);
+    private static final String METHOD_HANDLES = ClassFileWriter.internalName(MethodHandles.class);
+
+    private final NativeInterfaceProxyManager fallback;
+
+    public HiddenClassProxyManager() {
+        this.fallback = new NativeInterfaceProxyManager();
+    }
+
+    @Override
+    public Object createProxy(Class<?> interfaceClass) {
+        final NativeLibrary nativeLibrary = NativeInterfaceProxyManager.loadLibrary(interfaceClass);
+        try {
+            return this.createProxy(interfaceClass, nativeLibrary);
+        } catch (RuntimeException ex) {
+            NativeInterfaceProxyManager.releaseLibrary(interfaceClass);
+            throw ex;
+        }
+    }
+
+    @Override
+    public void releaseProxy(Class<?> interfaceClass) {
+        NativeInterfaceProxyManager.releaseLibrary(interfaceClass);
+    }
+
+    private Object createProxy(Class<?> interfaceClass, NativeLibrary nativeLibrary) {
+        if (Arrays.stream(interfaceClass.getMethods())
+                .anyMatch(m -> Modifier.isAbstract(m.getModifiers()) && m.getDeclaringClass() != interfaceClass)) {
+            // inherited abstract methods are not registered in the library
+            return this.fallback.createProxy(interfaceClass, nativeLibrary);
+        }
+        final List<Method> methods = Arrays.stream(interfaceClass.getDeclaredMethods())
+                .filter(m -> Modifier.isAbstract(m.getModifiers()))
+                .toList();
+        final boolean lazy = NativeInterfaceProxyManager.isLazy(interfaceClass);
+        final MethodHandle[] handles = new MethodHandle[methods.size()];
+        for (int i = 0; i < handles.length; i++) {
+            final Method method = methods.get(i);
+            final MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+            handles[i] = lazy ? new LazyBinding(nativeLibrary, method, type).callSite.dynamicInvoker()
+                    : nativeLibrary.getFunction(method).getHandle().getMethodHandle().asType(type);
+        }
+        final MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(interfaceClass, MethodHandles.lookup());
+        } catch (IllegalAccessException ex) {
+            // the package of the interface is not open to us
+            return this.fallback.createProxy(interfaceClass, nativeLibrary);
+        }
+        if (!lookup.hasFullPrivilegeAccess()) {
+            // interfaces in other named modules are opened without module access, which defining hidden classes needs
+            return this.fallback.createProxy(interfaceClass, nativeLibrary);
+        }
+        try {
+            final MethodHandles.Lookup implLookup = lookup.defineHiddenClassWithClassData(
+                    HiddenClassProxyManager.generate(interfaceClass, methods), handles, true);
+            return implLookup.findConstructor(implLookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable ex) {
+            throw new NativeException("Failed to implement native interface " + interfaceClass.getCanonicalName(), ex);
+        }
+    }
+
+    // binds the method on its first call and then relinks the call site to the bound handle
+    private static final class LazyBinding {
+
+        private static final MethodHandle BIND;
+
+        static {
+            try {
+                BIND = MethodHandles.lookup().findVirtual(LazyBinding.class, "bind",
+                        MethodType.methodType(Object.class, Object[].class));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                // should never happen
+                throw new NativeException("Failed to find method handle", ex);
+            }
+        }
+
+        private final NativeLibrary nativeLibrary;
+        private final Method method;
+        private final MutableCallSite callSite;
+
+        private LazyBinding(NativeLibrary nativeLibrary, Method method, MethodType type) {
+            this.nativeLibrary = nativeLibrary;
+            this.method = method;
+            this.callSite = new MutableCallSite(BIND.bindTo(this).asCollector(Object[].class, type.parameterCount()).asType(type));
+        }
+
+        private Object bind(Object[] args) throws Throwable {
+            // concurrent first calls bind the same function, missing symbols are reported here
+            final MethodHandle target = this.nativeLibrary.registerMethod(this.method).getHandle().getMethodHandle()
+                    .asType(this.callSite.type());
+            this.callSite.setTarget(target);
+            return target.invokeWithArguments(args);
+        }
+
+    }
+
+    private static byte[] generate(Class<?> interfaceClass, List<Method> methods) {
+        final String implName = ClassFileWriter.internalName(interfaceClass) + "$PanamaImpl";
+        final ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+                | ClassFileWriter.ACC_SUPER | ClassFileWriter.ACC_SYNTHETIC, implName, "java/lang/Object",
+                ClassFileWriter.internalName(interfaceClass));
+
+        // static initializer moves the class data handles into static final fields
+        final ClassFileWriter.Code clinit = writer.method(ClassFileWriter.ACC_STATIC, "<clinit>", MethodType.methodType(void.class));
+        clinit.invokeStatic(METHOD_HANDLES, "lookup", MethodType.methodType(MethodHandles.Lookup.class), false)
+                .ldc("_")
+                .ldc(MethodHandle[].class)
+                .invokeStatic(METHOD_HANDLES, "classData",
+                        MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class), false)
+                .checkcast(MethodHandle[].class)
+                .store(MethodHandle[].class, 0);
+
+        for (int i = 0; i < methods.size(); i++) {
+            final Method method = methods.get(i);
+            final MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+            final String handleField = "handle" + i;
+            writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                    handleField, MethodHandle.class.descriptorString());
+            clinit.load(MethodHandle[].class, 0)
+                    .pushInt(i)
+                    .arrayLoad()
+                    .putStatic(implName, handleField, MethodHandle.class);
+
+            final ClassFileWriter.Code code = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                    method.getName(), type);
+            code.getStatic(implName, handleField, MethodHandle.class);
+            code.loadAll(type, 1);
+            code.invokeVirtual(METHOD_HANDLE, "invokeExact", type)
+                    .returnValue(type.returnType());
+        }
+        clinit.returnValue(void.class);
+
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", MethodType.methodType(void.class))
+                .load(Object.class, 0)
+                .invokeSpecial("java/lang/Object", "<init>", MethodType.methodType(void.class))
+                .returnValue(void.class);
+        writer.method(ClassFileWriter.ACC_PUBLIC, "toString", MethodType.methodType(String.class))
+                .ldc(interfaceClass.getCanonicalName() + "$PanamaProxy")
+                .returnValue(String.class);
+        return writer.toByteArray();
+    }
+
+}
@@ -4,4 +4,8 @@ public interface IProxyManager {
 
     Object createProxy(Class<?> interfaceClass);
 
+    // called once a proxy created by this manager is not used anymore
+    default void releaseProxy(Class<?> interfaceClass) {
+    }
+
 }
@@ -1,36 +1,74 @@
 package de.intelligence.panamainvokerv4.invoker.proxy;
 
-import java.lang.foreign.SegmentScope;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
 import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.library.LibraryRegistry;
+import de.intelligence.panamainvokerv4.invoker.library.NativeFunction;
 import de.intelligence.panamainvokerv4.invoker.library.NativeLibrary;
 
 public final class NativeInterfaceProxyManager implements IProxyManager {
 
     @Override
     public Object createProxy(Class<?> interfaceClass) {
+        return this.createProxy(interfaceClass, NativeInterfaceProxyManager.loadLibrary(interfaceClass));
+    }
+
+    @Override
+    public void releaseProxy(Class<?> interfaceClass) {
+        NativeInterfaceProxyManager.releaseLibrary(interfaceClass);
+    }
+
+    Object createProxy(Class<?> interfaceClass, NativeLibrary nativeLibrary) {
+        return Proxy.newProxyInstance(interfaceClass.getClassLoader(), new Class<?>[]{interfaceClass},
+                new NativeInvocationHandler(interfaceClass, nativeLibrary, NativeInterfaceProxyManager.isLazy(interfaceClass)));
+    }
+
+    // acquires the shared library of the interface, has to be paired with releaseLibrary
+    static NativeLibrary loadLibrary(Class<?> interfaceClass) {
+        final String libraryName = NativeInterfaceProxyManager.getLibraryName(interfaceClass);
+        final NativeLibrary nativeLibrary = LibraryRegistry.acquire(libraryName);
+        if (NativeInterfaceProxyManager.isLazy(interfaceClass)) {
+            return nativeLibrary;
+        }
+        try {
+            for (final Method declaredMethod : interfaceClass.getDeclaredMethods()) {
+                nativeLibrary.registerMethod(declaredMethod);
+            }
+        } catch (RuntimeException ex) {
+            LibraryRegistry.release(libraryName);
+            throw ex;
+        }
+        return nativeLibrary;
+    }
+
+    static void releaseLibrary(Class<?> interfaceClass) {
+        LibraryRegistry.release(NativeInterfaceProxyManager.getLibraryName(interfaceClass));
+    }
+
+    static boolean isLazy(Class<?> interfaceClass) {
+        return interfaceClass.getAnnotation(NativeInterface.class).lazy();
+    }
+
+    private static String getLibraryName(Class<?> interfaceClass) {
         final String libraryName = interfaceClass.getAnnotation(NativeInterface.class).value();
         if (libraryName.isBlank()) {
             throw new NativeException("No native library was specified for native interface " + interfaceClass.getCanonicalName());
         }
-        final NativeLibrary nativeLibrary = new NativeLibrary(libraryName, SegmentScope.auto());
-        for (final Method declaredMethod : interfaceClass.getDeclaredMethods()) {
-            nativeLibrary.registerMethod(declaredMethod);
-        }
-        return Proxy.newProxyInstance(interfaceClass.getClassLoader(),
-                new Class<?>[]{interfaceClass}, new NativeInvocationHandler(interfaceClass, nativeLibrary));
+        return libraryName;
     }
 
     private static final class NativeInvocationHandler extends InvocationHandlerBase {
 
         private final NativeLibrary nativeLibrary;
+        private final boolean lazy;
 
-        public NativeInvocationHandler(Class<?> interfaceClass, NativeLibrary nativeLibrary) {
+        public NativeInvocationHandler(Class<?> interfaceClass, NativeLibrary nativeLibrary, boolean lazy) {
             super(interfaceClass);
             this.nativeLibrary = nativeLibrary;
+            this.lazy = lazy;
         }
 
         @Override
@@ -41,7 +79,8 @@ public final class NativeInterfaceProxyManager implements IProxyManager {
             if (method.getDeclaringClass() == Object.class) {
                 return method.invoke(this, args);
             }
-            return this.nativeLibrary.getFunction(method).invoke(method.getReturnType(), args);
+            final NativeFunction function = this.lazy ? this.nativeLibrary.registerMethod(method) : this.nativeLibrary.getFunction(method);
+            return function.invoke(method.getReturnType(), args);
         }
 
     }
@@ -0,0 +1,472 @@
+package de.intelligence.panamainvokerv4.invoker.reflection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+
+/**
+ * Minimal class file writer for the straight-line classes this library defines at runtime.
+ * Only branch free code is supported, which is why no stack map frames have to be emitted.
+ */
+public final class ClassFileWriter {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+    public static final int ACC_SYNTHETIC = 0x1000;
+
+    private static final int CLASS_VERSION = 64;
+
+    private final ConstantPool constantPool;
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields;
+    private final List<Code> methods;
+
+    public ClassFileWriter(int access, String internalName, String superName, String... interfaceNames) {
+        this.constantPool = new ConstantPool();
+        this.access = access;
+        this.thisClass = this.constantPool.classRef(internalName);
+        this.superClass = this.constantPool.classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            this.interfaces[i] = this.constantPool.classRef(interfaceNames[i]);
+        }
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
+
+    public static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+    public void field(int access, String name, String descriptor) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(this.constantPool.utf8(name));
+            out.writeShort(this.constantPool.utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new NativeException("Failed to write field " + name, ex);
+        }
+        this.fields.add(bytes.toByteArray());
+    }
+
+    public Code method(int access, String name, MethodType type) {
+        final Code code = new Code(access, name, type.toMethodDescriptorString(),
+                ((access & ACC_STATIC) != 0 ? 0 : 1) + slotCount(type));
+        this.methods.add(code);
+        return code;
+    }
+
+    public byte[] toByteArray() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            // the code attribute name has to be present before the pool is written
+            final int codeAttribute = this.constantPool.utf8("Code");
+            this.constantPool.writeTo(out);
+            out.writeShort(this.access);
+            out.writeShort(this.thisClass);
+            out.writeShort(this.superClass);
+            out.writeShort(this.interfaces.length);
+            for (final int anInterface : this.interfaces) {
+                out.writeShort(anInterface);
+            }
+            out.writeShort(this.fields.size());
+            for (final byte[] field : this.fields) {
+                out.write(field);
+            }
+            out.writeShort(this.methods.size());
+            for (final Code method : this.methods) {
+                method.writeTo(out, codeAttribute);
+            }
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new NativeException("Failed to write class file", ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int slotCount(MethodType type) {
+        int slots = 0;
+        for (final Class<?> parameter : type.parameterArray()) {
+            slots += slotSize(parameter);
+        }
+        return slots;
+    }
+
+    private static int slotSize(Class<?> type) {
+        if (type == void.class) {
+            return 0;
+        }
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+
+    public final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream code;
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+
+        private Code(int access, String name, String descriptor, int parameterSlots) {
+            this.access = access;
+            this.name = ClassFileWriter.this.constantPool.utf8(name);
+            this.descriptor = ClassFileWriter.this.constantPool.utf8(descriptor);
+            this.code = new ByteArrayOutputStream();
+            this.maxLocals = parameterSlots;
+        }
+
+        public Code load(Class<?> type, int slot) {
+            final int opcode;
+            if (!type.isPrimitive()) {
+                opcode = 0x19;
+            } else if (type == long.class) {
+                opcode = 0x16;
+            } else if (type == float.class) {
+                opcode = 0x17;
+            } else if (type == double.class) {
+                opcode = 0x18;
+            } else {
+                opcode = 0x15;
+            }
+            this.local(opcode, slot, slotSize(type));
+            return this.push(slotSize(type));
+        }
+
+        public Code store(Class<?> type, int slot) {
+            final int opcode;
+            if (!type.isPrimitive()) {
+                opcode = 0x3A;
+            } else if (type == long.class) {
+                opcode = 0x37;
+            } else if (type == float.class) {
+                opcode = 0x38;
+            } else if (type == double.class) {
+                opcode = 0x39;
+            } else {
+                opcode = 0x36;
+            }
+            this.local(opcode, slot, slotSize(type));
+            return this.push(-slotSize(type));
+        }
+
+        // loads all parameters of the given type starting at the given slot, returns the next free slot
+        public int loadAll(MethodType type, int firstSlot) {
+            int slot = firstSlot;
+            for (final Class<?> parameter : type.parameterArray()) {
+                this.load(parameter, slot);
+                slot += slotSize(parameter);
+            }
+            return slot;
+        }
+
+        public Code returnValue(Class<?> type) {
+            if (type == void.class) {
+                this.code.write(0xB1);
+            } else if (!type.isPrimitive()) {
+                this.code.write(0xB0);
+            } else if (type == long.class) {
+                this.code.write(0xAD);
+            } else if (type == float.class) {
+                this.code.write(0xAE);
+            } else if (type == double.class) {
+                this.code.write(0xAF);
+            } else {
+                this.code.write(0xAC);
+            }
+            this.stack = 0;
+            return this;
+        }
+
+        public Code pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                this.code.write(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                this.code.write(0x10);
+                this.code.write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                this.code.write(0x11);
+                this.u2(value);
+            } else {
+                this.ldcIndex(ClassFileWriter.this.constantPool.integer(value));
+            }
+            return this.push(1);
+        }
+
+        public Code pushLong(long value) {
+            if (value == 0L || value == 1L) {
+                this.code.write(0x09 + (int) value);
+            } else {
+                this.code.write(0x14);
+                this.u2(ClassFileWriter.this.constantPool.longValue(value));
+            }
+            return this.push(2);
+        }
+
+        public Code ldc(String value) {
+            this.ldcIndex(ClassFileWriter.this.constantPool.string(value));
+            return this.push(1);
+        }
+
+        public Code ldc(Class<?> value) {
+            this.ldcIndex(ClassFileWriter.this.constantPool.classRef(value.isArray()
+                    ? value.descriptorString() : internalName(value)));
+            return this.push(1);
+        }
+
+        public Code checkcast(Class<?> type) {
+            this.code.write(0xC0);
+            this.u2(ClassFileWriter.this.constantPool.classRef(type.isArray() ? type.descriptorString() : internalName(type)));
+            return this;
+        }
+
+        public Code arrayLoad() {
+            this.code.write(0x32);
+            return this.push(-1);
+        }
+
+        public Code dup() {
+            this.code.write(0x59);
+            return this.push(1);
+        }
+
+        public Code pop(Class<?> type) {
+            if (type == void.class) {
+                return this;
+            }
+            this.code.write(slotSize(type) == 2 ? 0x58 : 0x57);
+            return this.push(-slotSize(type));
+        }
+
+        public Code newInstance(String internalName) {
+            this.code.write(0xBB);
+            this.u2(ClassFileWriter.this.constantPool.classRef(internalName));
+            return this.push(1);
+        }
+
+        public Code getStatic(String owner, String name, Class<?> type) {
+            this.fieldInsn(0xB2, owner, name, type);
+            return this.push(slotSize(type));
+        }
+
+        public Code putStatic(String owner, String name, Class<?> type) {
+            this.fieldInsn(0xB3, owner, name, type);
+            return this.push(-slotSize(type));
+        }
+
+        public Code getField(String owner, String name, Class<?> type) {
+            this.fieldInsn(0xB4, owner, name, type);
+            return this.push(slotSize(type) - 1);
+        }
+
+        public Code putField(String owner, String name, Class<?> type) {
+            this.fieldInsn(0xB5, owner, name, type);
+            return this.push(-slotSize(type) - 1);
+        }
+
+        public Code invokeStatic(String owner, String name, MethodType type, boolean ownerIsInterface) {
+            this.methodInsn(0xB8, owner, name, type, ownerIsInterface);
+            return this.push(slotSize(type.returnType()) - slotCount(type));
+        }
+
+        public Code invokeVirtual(String owner, String name, MethodType type) {
+            this.methodInsn(0xB6, owner, name, type, false);
+            return this.push(slotSize(type.returnType()) - slotCount(type) - 1);
+        }
+
+        public Code invokeSpecial(String owner, String name, MethodType type) {
+            this.methodInsn(0xB7, owner, name, type, false);
+            return this.push(slotSize(type.returnType()) - slotCount(type) - 1);
+        }
+
+        public Code invokeInterface(String owner, String name, MethodType type) {
+            this.methodInsn(0xB9, owner, name, type, true);
+            this.code.write(slotCount(type) + 1);
+            this.code.write(0);
+            return this.push(slotSize(type.returnType()) - slotCount(type) - 1);
+        }
+
+        private void fieldInsn(int opcode, String owner, String name, Class<?> type) {
+            this.code.write(opcode);
+            this.u2(ClassFileWriter.this.constantPool.memberRef(9, owner, name, type.descriptorString()));
+        }
+
+        private void methodInsn(int opcode, String owner, String name, MethodType type, boolean ownerIsInterface) {
+            this.code.write(opcode);
+            this.u2(ClassFileWriter.this.constantPool.memberRef(ownerIsInterface ? 11 : 10, owner, name,
+                    type.toMethodDescriptorString()));
+        }
+
+        private void ldcIndex(int index) {
+            if (index < 256) {
+                this.code.write(0x12);
+                this.code.write(index);
+            } else {
+                this.code.write(0x13);
+                this.u2(index);
+            }
+        }
+
+        private void local(int opcode, int slot, int size) {
+            if (slot > 255) {
+                this.code.write(0xC4);
+                this.code.write(opcode);
+                this.u2(slot);
+            } else {
+                this.code.write(opcode);
+                this.code.write(slot);
+            }
+            this.maxLocals = Math.max(this.maxLocals, slot + size);
+        }
+
+        private Code push(int slots) {
+            this.stack += slots;
+            this.maxStack = Math.max(this.maxStack, this.stack);
+            return this;
+        }
+
+        private void u2(int value) {
+            this.code.write((value >>> 8) & 0xFF);
+            this.code.write(value & 0xFF);
+        }
+
+        private void writeTo(DataOutputStream out, int codeAttribute) throws IOException {
+            final byte[] bytes = this.code.toByteArray();
+            out.writeShort(this.access);
+            out.writeShort(this.name);
+            out.writeShort(this.descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(this.maxStack);
+            out.writeShort(this.maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+    }
+
+    private static final class ConstantPool {
+
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream out;
+        private final Map<String, Integer> entries;
+        private int count;
+
+        private ConstantPool() {
+            this.bytes = new ByteArrayOutputStream();
+            this.out = new DataOutputStream(this.bytes);
+            this.entries = new HashMap<>();
+            this.count = 1;
+        }
+
+        private int utf8(String value) {
+            return this.entry("U" + value, 1, out -> out.writeUTF(value));
+        }
+
+        private int integer(int value) {
+            return this.entry("I" + value, 1, out -> {
+                out.writeByte(3);
+                out.writeInt(value);
+            });
+        }
+
+        private int longValue(long value) {
+            // long constants occupy two pool slots
+            return this.entry("J" + value, 2, out -> {
+                out.writeByte(5);
+                out.writeLong(value);
+            });
+        }
+
+        private int classRef(String internalName) {
+            final int name = this.utf8(internalName);
+            return this.entry("C" + internalName, 1, out -> {
+                out.writeByte(7);
+                out.writeShort(name);
+            });
+        }
+
+        private int string(String value) {
+            final int utf8 = this.utf8(value);
+            return this.entry("S" + value, 1, out -> {
+                out.writeByte(8);
+                out.writeShort(utf8);
+            });
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            final int ownerIndex = this.classRef(owner);
+            final int nameIndex = this.utf8(name);
+            final int descriptorIndex = this.utf8(descriptor);
+            final int nameAndType = this.entry("N" + name + ' ' + descriptor, 1, out -> {
+                out.writeByte(12);
+                out.writeShort(nameIndex);
+                out.writeShort(descriptorIndex);
+            });
+            return this.entry("M" + tag + owner + '.' + name + descriptor, 1, out -> {
+                out.writeByte(tag);
+                out.writeShort(ownerIndex);
+                out.writeShort(nameAndType);
+            });
+        }
+
+        private int entry(String key, int slots, EntryWriter writer) {
+            final Integer present = this.entries.get(key);
+            if (present != null) {
+                return present;
+            }
+            try {
+                // utf8 entries write their tag here, all others write it themselves
+                if (key.charAt(0) == 'U') {
+                    this.out.writeByte(1);
+                }
+                writer.write(this.out);
+            } catch (IOException ex) {
+                throw new NativeException("Failed to write constant pool entry", ex);
+            }
+            final int index = this.count;
+            this.count += slots;
+            this.entries.put(key, index);
+            return index;
+        }
+
+        private void writeTo(DataOutputStream target) throws IOException {
+            this.out.flush();
+            target.writeShort(this.count);
+            this.bytes.writeTo(target);
+        }
+
+        @FunctionalInterface
+        private interface EntryWriter {
+
+            void write(DataOutputStream out) throws IOException;
+
+        }
+
+    }
+
+}
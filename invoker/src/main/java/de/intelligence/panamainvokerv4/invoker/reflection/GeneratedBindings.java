@@ -0,0 +1,99 @@
+package de.intelligence.panamainvokerv4.invoker.reflection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Optional;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.IStructure;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureAccessor;
+
+/**
+ * Resolves the classes emitted by the binding annotation processor. Generated classes live in the package of the
+ * annotated type and are named after its flattened binary name, e.g. {@code Outer_Inner_PanamaImpl}.
+ * <p>
+ * Every instance of a generated implementation acquires its library when it is created and has to be released again,
+ * its call sites are linked to the library while any instance holds it.
+ */
+public final class GeneratedBindings {
+
+    public static final String INTERFACE_SUFFIX = "_PanamaImpl";
+    public static final String STRUCTURE_SUFFIX = "_PanamaStruct";
+
+    private static final ClassValue<Optional<Class<?>>> IMPLEMENTATIONS = new ClassValue<>() {
+        @Override
+        protected Optional<Class<?>> computeValue(Class<?> type) {
+            return GeneratedBindings.findClass(type, INTERFACE_SUFFIX);
+        }
+    };
+
+    private static final ClassValue<Optional<IStructureAccessor<IStructure>>> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected Optional<IStructureAccessor<IStructure>> computeValue(Class<?> type) {
+            return GeneratedBindings.findClass(type, STRUCTURE_SUFFIX).map(ReflectionUtils::newInstance);
+        }
+    };
+
+    private GeneratedBindings() {
+    }
+
+    public static String getGeneratedName(Class<?> type, String suffix) {
+        final String packageName = type.getPackageName();
+        if (packageName.isEmpty()) {
+            return type.getName().replace('$', '_') + suffix;
+        }
+        return packageName + '.' + type.getName().substring(packageName.length() + 1).replace('$', '_') + suffix;
+    }
+
+    public static Optional<Object> newImplementation(Class<?> interfaceClass) {
+        return IMPLEMENTATIONS.get(interfaceClass).map(implClass -> GeneratedBindings.invoke(implClass, () ->
+                implClass.getConstructor().newInstance()));
+    }
+
+    // releases the library acquired by the generated implementation, once per instance
+    public static void releaseImplementation(Object implementation) {
+        final Class<?> implClass = implementation.getClass();
+        GeneratedBindings.invoke(implClass, () -> implClass.getMethod("release", implClass).invoke(null, implementation));
+    }
+
+    public static Optional<IStructureAccessor<IStructure>> getStructureAccessor(Class<?> structClass) {
+        return ACCESSORS.get(structClass);
+    }
+
+    // binding failures of the implementation, e.g. missing symbols, are rethrown as they are
+    private static Object invoke(Class<?> implClass, ReflectiveCall call) {
+        try {
+            return call.invoke();
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new NativeException("Failed to bind generated implementation " + implClass.getCanonicalName(), ex.getCause());
+        } catch (ReflectiveOperationException ex) {
+            throw new NativeException("Failed to bind generated implementation " + implClass.getCanonicalName(), ex);
+        }
+    }
+
+    private static Optional<Class<?>> findClass(Class<?> type, String suffix) {
+        try {
+            return Optional.of(Class.forName(GeneratedBindings.getGeneratedName(type, suffix), true, type.getClassLoader()));
+        } catch (ClassNotFoundException ex) {
+            return Optional.empty();
+        } catch (ExceptionInInitializerError ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new NativeException("Failed to initialize generated binding for " + type.getCanonicalName(), ex.getCause());
+        } catch (NoClassDefFoundError ex) {
+            // class values do not cache failures, later lookups of a class whose initializer failed end up here
+            throw new NativeException("Failed to initialize generated binding for " + type.getCanonicalName(), ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReflectiveCall {
+
+        Object invoke() throws ReflectiveOperationException;
+
+    }
+
+}
@@ -0,0 +1,307 @@
+package de.intelligence.panamainvokerv4.invoker.reflection;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SequenceLayout;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
+import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.IStructure;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureAccessor;
+import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+import de.intelligence.panamainvokerv4.invoker.type.Structure;
+import de.intelligence.panamainvokerv4.invoker.util.ConversionUtils;
+
+/**
+ * Generates the field accessors of structures which were not bound at compile time. The accessor is a hidden
+ * nestmate of the structure that copies primitive and {@link Pointer} fields with exactly typed segment accesses
+ * in layout order. All other fields are converted through their type converter.
+ */
+public final class StructureAccessors {
+
+    private static final String MEMORY_SEGMENT = ClassFileWriter.internalName(MemorySegment.class);
+    private static final String METHOD_HANDLES = ClassFileWriter.internalName(MethodHandles.class);
+    private static final String POINTER = ClassFileWriter.internalName(Pointer.class);
+    private static final String ACCESSORS = ClassFileWriter.internalName(StructureAccessors.class);
+
+    private StructureAccessors() {
+    }
+
+    // empty if the structure cannot be accessed by a generated class, e.g. because of final fields
+    public static Optional<IStructureAccessor<IStructure>> generate(Class<? extends IStructure> structClass, StructLayout layout,
+                                                                    Map<Field, Structure.FieldInfo> fieldInfos) {
+        final List<Member> members = new ArrayList<>();
+        for (final MemoryLayout memberLayout : layout.memberLayouts()) {
+            final Optional<String> name = memberLayout.name();
+            if (name.isEmpty()) {
+                // padding
+                continue;
+            }
+            final Structure.FieldInfo fieldInfo = fieldInfos.values().stream()
+                    .filter(f -> f.field().getName().equals(name.get()))
+                    .findFirst()
+                    .orElse(null);
+            if (fieldInfo == null || Modifier.isFinal(fieldInfo.field().getModifiers())) {
+                return Optional.empty();
+            }
+            members.add(new Member(fieldInfo, memberLayout, layout.byteOffset(MemoryLayout.PathElement.groupElement(name.get()))));
+        }
+        final MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(structClass, MethodHandles.lookup());
+        } catch (IllegalAccessException ex) {
+            // the package of the structure is not open to us
+            return Optional.empty();
+        }
+        if (!lookup.hasFullPrivilegeAccess()) {
+            // structures in other named modules are opened without module access, which defining hidden classes needs
+            return Optional.empty();
+        }
+        final Object[] classData = new Object[members.size() + 1];
+        classData[0] = layout;
+        for (int i = 0; i < members.size(); i++) {
+            final Member member = members.get(i);
+            classData[i + 1] = member.isDirect() ? member.layout() : member.fieldInfo();
+        }
+        try {
+            final MethodHandles.Lookup accessorLookup = lookup.defineHiddenClassWithClassData(
+                    StructureAccessors.write(structClass, members), classData, true, MethodHandles.Lookup.ClassOption.NESTMATE);
+            @SuppressWarnings("unchecked")
+            final IStructureAccessor<IStructure> accessor = (IStructureAccessor<IStructure>) accessorLookup
+                    .findConstructor(accessorLookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            return Optional.of(accessor);
+        } catch (Throwable ex) {
+            throw new NativeException("Failed to generate accessor for struct " + structClass.getCanonicalName(), ex);
+        }
+    }
+
+    public static void readField(Structure.FieldInfo fieldInfo, Object structure, MemorySegment segment) {
+        if (fieldInfo.nativeHandle() == null) {
+            StructureAccessors.readInline(fieldInfo, structure, segment.asSlice(fieldInfo.offset(), fieldInfo.layout().byteSize()));
+            return;
+        }
+        final ITypeConverter converter = fieldInfo.converter();
+        final Class<?> type = fieldInfo.field().getType();
+        if (converter != null) {
+            fieldInfo.javaHandle().set(structure, converter.toJava(fieldInfo.nativeHandle().get(segment), new TypeConstructionContext(type)));
+            return;
+        }
+        if (!ConversionUtils.isPrimitiveOrBoxedPrimitive(type)) {
+            throw new NativeException("Cannot convert between java type " + type.getCanonicalName() + " and native type");
+        }
+        fieldInfo.javaHandle().set(structure, fieldInfo.nativeHandle().get(segment));
+    }
+
+    public static void writeField(Structure.FieldInfo fieldInfo, Object structure, MemorySegment segment) {
+        if (fieldInfo.nativeHandle() == null) {
+            StructureAccessors.writeInline(fieldInfo, structure, segment.asSlice(fieldInfo.offset(), fieldInfo.layout().byteSize()));
+            return;
+        }
+        final ITypeConverter converter = fieldInfo.converter();
+        final Class<?> type = fieldInfo.field().getType();
+        if (converter != null) {
+            fieldInfo.nativeHandle().set(segment, converter.toNative(fieldInfo.javaHandle().get(structure), new TypeConstructionContext(type)));
+            return;
+        }
+        if (!ConversionUtils.isPrimitiveOrBoxedPrimitive(type)) {
+            throw new NativeException("Cannot convert between java type " + type.getCanonicalName() + " and native type");
+        }
+        fieldInfo.nativeHandle().set(segment, fieldInfo.javaHandle().get(structure));
+    }
+
+    // nested structures are decoded from the memory of the enclosing one, arrays are created if missing
+    @SuppressWarnings("unchecked")
+    private static void readInline(Structure.FieldInfo fieldInfo, Object structure, MemorySegment slice) {
+        final Class<?> type = fieldInfo.field().getType();
+        final Object value = fieldInfo.javaHandle().get(structure);
+        if (fieldInfo.layout() instanceof SequenceLayout sequenceLayout) {
+            final int length = (int) sequenceLayout.elementCount();
+            Object array = value;
+            if (array == null || Array.getLength(array) != length) {
+                array = Array.newInstance(type.getComponentType(), length);
+                fieldInfo.javaHandle().set(structure, array);
+            }
+            MemorySegment.copy(slice, (ValueLayout) sequenceLayout.elementLayout(), 0, array, 0, length);
+            return;
+        }
+        Structure nested = (Structure) value;
+        if (nested == null) {
+            nested = Structure.newInstance((Class<? extends Structure>) type);
+            fieldInfo.javaHandle().set(structure, nested);
+        }
+        nested.readFrom(slice);
+    }
+
+    // missing nested structures and arrays leave their memory unchanged
+    private static void writeInline(Structure.FieldInfo fieldInfo, Object structure, MemorySegment slice) {
+        final Object value = fieldInfo.javaHandle().get(structure);
+        if (value == null) {
+            return;
+        }
+        if (fieldInfo.layout() instanceof SequenceLayout sequenceLayout) {
+            final int length = (int) sequenceLayout.elementCount();
+            if (Array.getLength(value) != length) {
+                throw new NativeException("Field " + fieldInfo.field().getName() + " needs an array of length " + length);
+            }
+            MemorySegment.copy(value, 0, slice, (ValueLayout) sequenceLayout.elementLayout(), 0, length);
+            return;
+        }
+        ((Structure) value).writeTo(slice);
+    }
+
+    public static MemorySegment segmentOf(Pointer pointer) {
+        return pointer == null ? MemorySegment.NULL : pointer.getSegment();
+    }
+
+    private static byte[] write(Class<?> structClass, List<Member> members) {
+        final String structName = ClassFileWriter.internalName(structClass);
+        final String implName = structName + "$PanamaStruct";
+        final ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+                | ClassFileWriter.ACC_SUPER | ClassFileWriter.ACC_SYNTHETIC, implName, "java/lang/Object",
+                ClassFileWriter.internalName(IStructureAccessor.class));
+
+        // static initializer moves the class data into static final fields
+        final ClassFileWriter.Code clinit = writer.method(ClassFileWriter.ACC_STATIC, "<clinit>", MethodType.methodType(void.class));
+        clinit.invokeStatic(METHOD_HANDLES, "lookup", MethodType.methodType(MethodHandles.Lookup.class), false)
+                .ldc("_")
+                .ldc(Object[].class)
+                .invokeStatic(METHOD_HANDLES, "classData",
+                        MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class), false)
+                .checkcast(Object[].class)
+                .store(Object[].class, 0);
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                "layout", StructLayout.class.descriptorString());
+        clinit.load(Object[].class, 0)
+                .pushInt(0)
+                .arrayLoad()
+                .checkcast(StructLayout.class)
+                .putStatic(implName, "layout", StructLayout.class);
+        for (int i = 0; i < members.size(); i++) {
+            final Class<?> constantType = members.get(i).constantType();
+            writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                    "member" + i, constantType.descriptorString());
+            clinit.load(Object[].class, 0)
+                    .pushInt(i + 1)
+                    .arrayLoad()
+                    .checkcast(constantType)
+                    .putStatic(implName, "member" + i, constantType);
+        }
+        clinit.returnValue(void.class);
+
+        final MethodType accessType = MethodType.methodType(void.class, IStructure.class, MemorySegment.class);
+        final ClassFileWriter.Code read = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL, "read", accessType);
+        final ClassFileWriter.Code write = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL, "write", accessType);
+        // slot 3 holds the structure with its exact type
+        read.load(IStructure.class, 1).checkcast(structClass).store(structClass, 3);
+        write.load(IStructure.class, 1).checkcast(structClass).store(structClass, 3);
+        for (int i = 0; i < members.size(); i++) {
+            final Member member = members.get(i);
+            final String constant = "member" + i;
+            final Class<?> fieldType = member.fieldInfo().field().getType();
+            final String fieldName = member.fieldInfo().field().getName();
+            if (!member.isDirect()) {
+                final MethodType fieldAccess = MethodType.methodType(void.class, Structure.FieldInfo.class, Object.class, MemorySegment.class);
+                read.getStatic(implName, constant, Structure.FieldInfo.class)
+                        .load(structClass, 3)
+                        .load(MemorySegment.class, 2)
+                        .invokeStatic(ACCESSORS, "readField", fieldAccess, false);
+                write.getStatic(implName, constant, Structure.FieldInfo.class)
+                        .load(structClass, 3)
+                        .load(MemorySegment.class, 2)
+                        .invokeStatic(ACCESSORS, "writeField", fieldAccess, false);
+                continue;
+            }
+            final Class<?> layoutType = member.constantType();
+            final Class<?> carrier = fieldType == Pointer.class ? MemorySegment.class : fieldType;
+
+            // structure.field = segment.get(layout, offset)
+            read.load(structClass, 3);
+            if (fieldType == Pointer.class) {
+                read.newInstance(POINTER).dup();
+            }
+            read.load(MemorySegment.class, 2)
+                    .getStatic(implName, constant, layoutType)
+                    .pushLong(member.offset())
+                    .invokeInterface(MEMORY_SEGMENT, "get", MethodType.methodType(carrier, layoutType, long.class));
+            if (fieldType == Pointer.class) {
+                read.invokeSpecial(POINTER, "<init>", MethodType.methodType(void.class, MemorySegment.class));
+            }
+            read.putField(structName, fieldName, fieldType);
+
+            // segment.set(layout, offset, structure.field)
+            write.load(MemorySegment.class, 2)
+                    .getStatic(implName, constant, layoutType)
+                    .pushLong(member.offset())
+                    .load(structClass, 3)
+                    .getField(structName, fieldName, fieldType);
+            if (fieldType == Pointer.class) {
+                write.invokeStatic(ACCESSORS, "segmentOf", MethodType.methodType(MemorySegment.class, Pointer.class), false);
+            }
+            write.invokeInterface(MEMORY_SEGMENT, "set", MethodType.methodType(void.class, layoutType, long.class, carrier));
+        }
+        read.returnValue(void.class);
+        write.returnValue(void.class);
+
+        writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL, "getLayout", MethodType.methodType(StructLayout.class))
+                .getStatic(implName, "layout", StructLayout.class)
+                .returnValue(StructLayout.class);
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", MethodType.methodType(void.class))
+                .load(Object.class, 0)
+                .invokeSpecial("java/lang/Object", "<init>", MethodType.methodType(void.class))
+                .returnValue(void.class);
+        return writer.toByteArray();
+    }
+
+    // typed layout interface whose segment accessors take the given carrier
+    static Class<?> layoutType(Class<?> carrier) {
+        if (carrier == boolean.class) {
+            return ValueLayout.OfBoolean.class;
+        } else if (carrier == byte.class) {
+            return ValueLayout.OfByte.class;
+        } else if (carrier == char.class) {
+            return ValueLayout.OfChar.class;
+        } else if (carrier == short.class) {
+            return ValueLayout.OfShort.class;
+        } else if (carrier == int.class) {
+            return ValueLayout.OfInt.class;
+        } else if (carrier == long.class) {
+            return ValueLayout.OfLong.class;
+        } else if (carrier == float.class) {
+            return ValueLayout.OfFloat.class;
+        } else if (carrier == double.class) {
+            return ValueLayout.OfDouble.class;
+        } else if (carrier == MemorySegment.class) {
+            return ValueLayout.OfAddress.class;
+        }
+        return null;
+    }
+
+    private record Member(Structure.FieldInfo fieldInfo, MemoryLayout layout, long offset) {
+
+        // primitives and pointers are copied by the generated code itself
+        private boolean isDirect() {
+            final Class<?> fieldType = this.fieldInfo.field().getType();
+            final Class<?> carrier = fieldType == Pointer.class ? MemorySegment.class : fieldType;
+            return (fieldType.isPrimitive() || fieldType == Pointer.class) && this.layout instanceof ValueLayout valueLayout
+                    && valueLayout.carrier() == carrier;
+        }
+
+        private Class<?> constantType() {
+            return this.isDirect() ? StructureAccessors.layoutType(((ValueLayout) this.layout).carrier()) : Structure.FieldInfo.class;
+        }
+
+    }
+
+}
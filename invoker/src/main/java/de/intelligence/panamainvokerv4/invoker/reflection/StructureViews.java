@@ -0,0 +1,262 @@
+package de.intelligence.panamainvokerv4.invoker.reflection;
+
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder;
+import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureView;
+import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+import de.intelligence.panamainvokerv4.invoker.util.ConversionUtils;
+
+/**
+ * Generates the implementations of {@link IStructureView} interfaces. Every implementation is a hidden class holding
+ * only the segment, each accessor is a single exactly typed segment access on a constant offset.
+ */
+public final class StructureViews {
+
+    private static final String MEMORY_SEGMENT = ClassFileWriter.internalName(MemorySegment.class);
+    private static final String METHOD_HANDLES = ClassFileWriter.internalName(MethodHandles.class);
+    private static final String POINTER = ClassFileWriter.internalName(Pointer.class);
+    private static final String ACCESSORS = ClassFileWriter.internalName(StructureAccessors.class);
+
+    private static final ClassValue<ViewInfo> VIEWS = new ClassValue<>() {
+        @Override
+        protected ViewInfo computeValue(Class<?> type) {
+            return StructureViews.createView(type);
+        }
+    };
+
+    private StructureViews() {
+    }
+
+    public static <T extends IStructureView> T of(Class<T> viewClass, MemorySegment segment) {
+        final ViewInfo viewInfo = VIEWS.get(viewClass);
+        if (segment.byteSize() < viewInfo.layout.byteSize()) {
+            throw new NativeException("Segment of " + segment.byteSize() + " bytes is too small for struct view "
+                    + viewClass.getCanonicalName());
+        }
+        try {
+            return viewClass.cast((Object) viewInfo.constructor.invokeExact(segment));
+        } catch (Throwable ex) {
+            throw new NativeException("Failed to create struct view " + viewClass.getCanonicalName(), ex);
+        }
+    }
+
+    public static StructLayout getLayout(Class<?> viewClass) {
+        return VIEWS.get(viewClass).layout;
+    }
+
+    private static ViewInfo createView(Class<?> viewClass) {
+        if (!viewClass.isInterface() || !IStructureView.class.isAssignableFrom(viewClass)) {
+            throw new NativeException("Struct views have to be interfaces extending IStructureView: " + viewClass.getCanonicalName());
+        }
+        if (!ConversionUtils.isValidStruct(viewClass)) {
+            throw new NativeException("Specified interface is not a struct: " + viewClass.getCanonicalName());
+        }
+        final List<Property> properties = StructureViews.collectProperties(viewClass);
+        final StructLayout layout = ConversionUtils.structLayout(properties.stream()
+                .map(p -> p.layout.withName(p.name))
+                .toArray(MemoryLayout[]::new));
+        final Object[] classData = new Object[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            classData[i] = properties.get(i).layout;
+        }
+        final MethodHandles.Lookup lookup;
+        try {
+            lookup = MethodHandles.privateLookupIn(viewClass, MethodHandles.lookup());
+        } catch (IllegalAccessException ex) {
+            throw new NativeException("Package of struct view " + viewClass.getCanonicalName() + " is not open", ex);
+        }
+        try {
+            final MethodHandles.Lookup viewLookup = lookup.defineHiddenClassWithClassData(
+                    StructureViews.write(viewClass, layout, properties), classData, true);
+            final MethodHandle constructor = viewLookup.findConstructor(viewLookup.lookupClass(),
+                    MethodType.methodType(void.class, MemorySegment.class));
+            return new ViewInfo(layout, constructor.asType(MethodType.methodType(Object.class, MemorySegment.class)));
+        } catch (ReflectiveOperationException ex) {
+            throw new NativeException("Failed to implement struct view " + viewClass.getCanonicalName(), ex);
+        }
+    }
+
+    // getters define the fields, setters are optional
+    private static List<Property> collectProperties(Class<?> viewClass) {
+        final Map<String, Method> getters = new HashMap<>();
+        final Map<String, Method> setters = new HashMap<>();
+        for (final Method method : viewClass.getMethods()) {
+            if (!Modifier.isAbstract(method.getModifiers()) || method.getDeclaringClass() == IStructureView.class) {
+                continue;
+            }
+            final String name = method.getName();
+            if (name.startsWith("get") && name.length() > 3 && method.getParameterCount() == 0 && method.getReturnType() != void.class) {
+                getters.put(StructureViews.propertyName(name, 3), method);
+            } else if (name.startsWith("is") && name.length() > 2 && method.getParameterCount() == 0
+                    && method.getReturnType() == boolean.class) {
+                getters.put(StructureViews.propertyName(name, 2), method);
+            } else if (name.startsWith("set") && name.length() > 3 && method.getParameterCount() == 1
+                    && method.getReturnType() == void.class) {
+                setters.put(StructureViews.propertyName(name, 3), method);
+            } else {
+                throw new NativeException("Method " + name + " of struct view " + viewClass.getCanonicalName()
+                        + " is neither a getter nor a setter");
+            }
+        }
+        final List<Property> properties = new ArrayList<>();
+        for (final Map.Entry<String, Method> entry : getters.entrySet()) {
+            final Method getter = entry.getValue();
+            final Class<?> type = getter.getReturnType();
+            final Method setter = setters.remove(entry.getKey());
+            if (setter != null && setter.getParameterTypes()[0] != type) {
+                throw new NativeException("Setter of " + entry.getKey() + " does not match its getter in struct view "
+                        + viewClass.getCanonicalName());
+            }
+            final MemoryLayout layout = ConversionUtils.createMemoryLayout(type);
+            final Class<?> carrier = type == Pointer.class ? MemorySegment.class : type;
+            if ((!type.isPrimitive() && type != Pointer.class) || !(layout instanceof ValueLayout valueLayout)
+                    || valueLayout.carrier() != carrier) {
+                throw new NativeException("Type " + type.getCanonicalName() + " of " + entry.getKey() + " is unsupported in struct view "
+                        + viewClass.getCanonicalName());
+            }
+            properties.add(new Property(entry.getKey(), type, valueLayout, getter, setter));
+        }
+        if (!setters.isEmpty()) {
+            throw new NativeException("Setters without getters in struct view " + viewClass.getCanonicalName() + ": " + setters.keySet());
+        }
+        StructureViews.sortProperties(viewClass, properties);
+        return properties;
+    }
+
+    // same rules as for structure classes, but the declaration order of methods is unknown
+    private static void sortProperties(Class<?> viewClass, List<Property> properties) {
+        final boolean atLeastOneAnnotated = properties.stream().anyMatch(p -> p.getter.isAnnotationPresent(FieldOrder.class));
+        if (atLeastOneAnnotated) {
+            if (properties.stream().anyMatch(p -> !p.getter.isAnnotationPresent(FieldOrder.class))) {
+                throw new NativeException("None or all getters have to be annotated with @FieldOrder for struct view "
+                        + viewClass.getCanonicalName());
+            }
+            final Set<Integer> orderNums = new HashSet<>();
+            for (final Property property : properties) {
+                if (!orderNums.add(property.getter.getAnnotation(FieldOrder.class).value())) {
+                    throw new NativeException("FieldOrder annotations need distinct order priorities");
+                }
+            }
+            properties.sort(Comparator.comparingInt(p -> p.getter.getAnnotation(FieldOrder.class).value()));
+            return;
+        }
+        final List<String> fieldOrder = Arrays.asList(viewClass.getAnnotation(NativeStruct.class).fieldOrder());
+        if (fieldOrder.size() != properties.size() || properties.stream().anyMatch(p -> !fieldOrder.contains(p.name))) {
+            throw new NativeException("Struct view " + viewClass.getCanonicalName()
+                    + " needs a field order matching its properties, either in @NativeStruct or with @FieldOrder");
+        }
+        properties.sort(Comparator.comparingInt(p -> fieldOrder.indexOf(p.name)));
+    }
+
+    private static String propertyName(String methodName, int prefixLength) {
+        return Character.toLowerCase(methodName.charAt(prefixLength)) + methodName.substring(prefixLength + 1);
+    }
+
+    private static byte[] write(Class<?> viewClass, StructLayout layout, List<Property> properties) {
+        final String implName = ClassFileWriter.internalName(viewClass) + "$PanamaView";
+        final ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+                | ClassFileWriter.ACC_SUPER | ClassFileWriter.ACC_SYNTHETIC, implName, "java/lang/Object",
+                ClassFileWriter.internalName(viewClass));
+        writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_FINAL, "segment", MemorySegment.class.descriptorString());
+
+        // static initializer moves the layouts of the class data into static final fields
+        final ClassFileWriter.Code clinit = writer.method(ClassFileWriter.ACC_STATIC, "<clinit>", MethodType.methodType(void.class));
+        clinit.invokeStatic(METHOD_HANDLES, "lookup", MethodType.methodType(MethodHandles.Lookup.class), false)
+                .ldc("_")
+                .ldc(Object[].class)
+                .invokeStatic(METHOD_HANDLES, "classData",
+                        MethodType.methodType(Object.class, MethodHandles.Lookup.class, String.class, Class.class), false)
+                .checkcast(Object[].class)
+                .store(Object[].class, 0);
+
+        for (int i = 0; i < properties.size(); i++) {
+            final Property property = properties.get(i);
+            final Class<?> layoutType = StructureAccessors.layoutType(property.layout.carrier());
+            final String constant = "layout" + i;
+            final long offset = layout.byteOffset(MemoryLayout.PathElement.groupElement(property.name));
+            writer.field(ClassFileWriter.ACC_PRIVATE | ClassFileWriter.ACC_STATIC | ClassFileWriter.ACC_FINAL,
+                    constant, layoutType.descriptorString());
+            clinit.load(Object[].class, 0)
+                    .pushInt(i)
+                    .arrayLoad()
+                    .checkcast(layoutType)
+                    .putStatic(implName, constant, layoutType);
+
+            // return this.segment.get(layout, offset)
+            final ClassFileWriter.Code getter = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                    property.getter.getName(), MethodType.methodType(property.type));
+            if (property.type == Pointer.class) {
+                getter.newInstance(POINTER).dup();
+            }
+            getter.load(Object.class, 0)
+                    .getField(implName, "segment", MemorySegment.class)
+                    .getStatic(implName, constant, layoutType)
+                    .pushLong(offset)
+                    .invokeInterface(MEMORY_SEGMENT, "get", MethodType.methodType(property.layout.carrier(), layoutType, long.class));
+            if (property.type == Pointer.class) {
+                getter.invokeSpecial(POINTER, "<init>", MethodType.methodType(void.class, MemorySegment.class));
+            }
+            getter.returnValue(property.type);
+
+            if (property.setter == null) {
+                continue;
+            }
+            // this.segment.set(layout, offset, value)
+            final ClassFileWriter.Code setter = writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL,
+                    property.setter.getName(), MethodType.methodType(void.class, property.type));
+            setter.load(Object.class, 0)
+                    .getField(implName, "segment", MemorySegment.class)
+                    .getStatic(implName, constant, layoutType)
+                    .pushLong(offset)
+                    .load(property.type, 1);
+            if (property.type == Pointer.class) {
+                setter.invokeStatic(ACCESSORS, "segmentOf", MethodType.methodType(MemorySegment.class, Pointer.class), false);
+            }
+            setter.invokeInterface(MEMORY_SEGMENT, "set", MethodType.methodType(void.class, layoutType, long.class, property.layout.carrier()))
+                    .returnValue(void.class);
+        }
+        clinit.returnValue(void.class);
+
+        writer.method(ClassFileWriter.ACC_PUBLIC, "<init>", MethodType.methodType(void.class, MemorySegment.class))
+                .load(Object.class, 0)
+                .invokeSpecial("java/lang/Object", "<init>", MethodType.methodType(void.class))
+                .load(Object.class, 0)
+                .load(MemorySegment.class, 1)
+                .putField(implName, "segment", MemorySegment.class)
+                .returnValue(void.class);
+        writer.method(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL, "segment", MethodType.methodType(MemorySegment.class))
+                .load(Object.class, 0)
+                .getField(implName, "segment", MemorySegment.class)
+                .returnValue(MemorySegment.class);
+        writer.method(ClassFileWriter.ACC_PUBLIC, "toString", MethodType.methodType(String.class))
+                .ldc(viewClass.getCanonicalName() + "$PanamaView")
+                .returnValue(String.class);
+        return writer.toByteArray();
+    }
+
+    private record Property(String name, Class<?> type, ValueLayout layout, Method getter, Method setter) {
+    }
+
+    private record ViewInfo(StructLayout layout, MethodHandle constructor) {
+    }
+
+}
@@ -0,0 +1,14 @@
+package de.intelligence.panamainvokerv4.invoker.type;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+
+public interface IStructureAccessor<T extends IStructure> {
+
+    StructLayout getLayout();
+
+    void read(T structure, MemorySegment segment);
+
+    void write(T structure, MemorySegment segment);
+
+}
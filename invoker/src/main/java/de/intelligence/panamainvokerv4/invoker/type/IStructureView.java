@@ -0,0 +1,35 @@
+package de.intelligence.panamainvokerv4.invoker.type;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.StructLayout;
+
+import de.intelligence.panamainvokerv4.invoker.reflection.StructureViews;
+
+/**
+ * Struct model without a java side copy. Users declare an interface annotated with {@code @NativeStruct} whose
+ * getters and setters ({@code getX}, {@code isX}, {@code setX}) describe the fields, the generated implementation
+ * accesses the underlying segment on every call. The field order is given by {@code @FieldOrder} on the getters
+ * or by {@code NativeStruct.fieldOrder}. Views are passed to native functions by reference.
+ */
+public interface IStructureView {
+
+    MemorySegment segment();
+
+    default long address() {
+        return this.segment().address();
+    }
+
+    static <T extends IStructureView> T of(Class<T> viewClass, MemorySegment segment) {
+        return StructureViews.of(viewClass, segment);
+    }
+
+    static <T extends IStructureView> T allocate(Class<T> viewClass, SegmentAllocator allocator) {
+        return StructureViews.of(viewClass, allocator.allocate(StructureViews.getLayout(viewClass)));
+    }
+
+    static StructLayout layoutOf(Class<? extends IStructureView> viewClass) {
+        return StructureViews.getLayout(viewClass);
+    }
+
+}
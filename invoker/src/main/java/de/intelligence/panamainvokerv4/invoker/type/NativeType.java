@@ -1,11 +1,17 @@
 package de.intelligence.panamainvokerv4.invoker.type;
 
 import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.SegmentAllocator;
 
 public interface NativeType {
 
     Object toNative();
 
+    // types allocating native memory on conversion should use the given allocator
+    default Object toNative(SegmentAllocator allocator) {
+        return this.toNative();
+    }
+
     Object toJava(Object nativeObj);
 
     MemoryLayout getLayout();
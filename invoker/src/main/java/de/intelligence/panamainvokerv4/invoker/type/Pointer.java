@@ -53,7 +53,7 @@ public class Pointer implements NativeType {
 
     @Override
     public Object toJava(Object nativeObj) {
-        return new Pointer((long) nativeObj);
+        return nativeObj instanceof MemorySegment segment ? new Pointer(segment) : new Pointer((long) nativeObj);
     }
 
     @Override
@@ -0,0 +1,162 @@
+package de.intelligence.panamainvokerv4.invoker.type;
+
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.foreign.SegmentScope;
+import java.lang.foreign.ValueLayout;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+
+/**
+ * Native array of structures in one contiguous segment, passed to native functions as {@code T*}. Elements are
+ * accessed through cursors, structures which are moved from element to element, or synchronized in bulk with
+ * separate structures. Arrays returned by native functions have no element type and length until they are
+ * {@link #reinterpret(Class, int) reinterpreted}.
+ */
+public final class StructArray<T extends Structure> implements NativeType {
+
+    private final Class<T> elementType;
+    private final long stride;
+    private final int length;
+    private final MemorySegment segment;
+
+    public StructArray(Class<T> elementType, int length) {
+        this(elementType, length, SegmentAllocator.nativeAllocator(SegmentScope.auto()));
+    }
+
+    public StructArray(Class<T> elementType, int length, SegmentAllocator allocator) {
+        this(elementType, length, StructArray.allocate(elementType, length, allocator));
+    }
+
+    private StructArray(Class<T> elementType, int length, MemorySegment segment) {
+        this.elementType = elementType;
+        this.stride = elementType == null ? 0 : StructArray.stride(elementType);
+        this.length = length;
+        this.segment = segment;
+    }
+
+    // wraps memory which already holds the elements
+    public static <T extends Structure> StructArray<T> of(Class<T> elementType, MemorySegment segment, int length) {
+        if (segment.byteSize() < StructArray.stride(elementType) * length) {
+            throw new NativeException("Segment is too small for " + length + " elements of " + elementType.getCanonicalName());
+        }
+        return new StructArray<>(elementType, length, segment);
+    }
+
+    public <U extends Structure> StructArray<U> reinterpret(Class<U> elementType, int length) {
+        return StructArray.of(elementType, MemorySegment.ofAddress(this.address(), StructArray.stride(elementType) * length), length);
+    }
+
+    public Class<T> getElementType() {
+        return this.elementType;
+    }
+
+    public int length() {
+        return this.length;
+    }
+
+    public long address() {
+        return this.segment.address();
+    }
+
+    public MemorySegment segment() {
+        return this.segment;
+    }
+
+    public MemorySegment elementSegment(int index) {
+        Objects.checkIndex(index, this.length);
+        return this.segment.asSlice(index * this.stride, this.stride);
+    }
+
+    // new structure placed on the first element, move it with at
+    public T cursor() {
+        if (this.elementType == null) {
+            throw new NativeException("Struct array has no element type, it has to be reinterpreted first");
+        }
+        final T cursor = Structure.newInstance(this.elementType);
+        if (this.length > 0) {
+            cursor.bind(this.elementSegment(0));
+        }
+        return cursor;
+    }
+
+    // moves the cursor onto the element without synchronizing it
+    public T at(int index, T cursor) {
+        cursor.bind(this.elementSegment(index));
+        return cursor;
+    }
+
+    // reads every element of the range into the cursor and passes it to the action
+    public void forEach(int from, int to, T cursor, Consumer<? super T> action) {
+        Objects.checkFromToIndex(from, to, this.length);
+        for (int i = from; i < to; i++) {
+            cursor.bind(this.elementSegment(i));
+            cursor.readFrom(cursor.segment());
+            action.accept(cursor);
+        }
+    }
+
+    public void readAll(T[] targets) {
+        this.read(0, targets, 0, this.length);
+    }
+
+    public void writeAll(T[] sources) {
+        this.write(0, sources, 0, this.length);
+    }
+
+    public void read(int index, T[] targets, int offset, int count) {
+        Objects.checkFromIndexSize(index, count, this.length);
+        Objects.checkFromIndexSize(offset, count, targets.length);
+        for (int i = 0; i < count; i++) {
+            targets[offset + i].readFrom(this.elementSegment(index + i));
+        }
+    }
+
+    public void write(int index, T[] sources, int offset, int count) {
+        Objects.checkFromIndexSize(index, count, this.length);
+        Objects.checkFromIndexSize(offset, count, sources.length);
+        for (int i = 0; i < count; i++) {
+            sources[offset + i].writeTo(this.elementSegment(index + i));
+        }
+    }
+
+    @Override
+    public Object toNative() {
+        return this.segment;
+    }
+
+    @Override
+    public Object toJava(Object nativeObj) {
+        final MemorySegment segment = nativeObj instanceof MemorySegment s ? s : MemorySegment.ofAddress((long) nativeObj);
+        return new StructArray<>(null, 0, segment);
+    }
+
+    @Override
+    public MemoryLayout getLayout() {
+        return ValueLayout.ADDRESS;
+    }
+
+    @Override
+    public String toString() {
+        return "StructArray[" + (this.elementType == null ? "?" : this.elementType.getSimpleName()) + "; " + this.length + "]";
+    }
+
+    // element size rounded up to the alignment of the structure
+    private static long stride(Class<? extends Structure> elementType) {
+        final GroupLayout layout = Structure.getStructureInfo(elementType).layout();
+        final long alignment = layout.byteAlignment();
+        return (layout.byteSize() + alignment - 1) / alignment * alignment;
+    }
+
+    private static MemorySegment allocate(Class<? extends Structure> elementType, int length, SegmentAllocator allocator) {
+        final GroupLayout layout = Structure.getStructureInfo(elementType).layout();
+        final MemorySegment segment = allocator.allocate(StructArray.stride(elementType) * length, layout.byteAlignment());
+        segment.fill((byte) 0);
+        return segment;
+    }
+
+}
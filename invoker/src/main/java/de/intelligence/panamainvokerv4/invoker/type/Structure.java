@@ -5,19 +5,22 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.SegmentScope;
-import java.lang.foreign.StructLayout;
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.MemoryLayout;
 import java.lang.invoke.VarHandle;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.List;
 import java.util.Map;
 
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.reflection.StructureAccessors;
 import de.intelligence.panamainvokerv4.invoker.update.UpdatePolicy;
-import de.intelligence.panamainvokerv4.invoker.util.ConversionUtils;
 import de.intelligence.panamainvokerv4.invoker.util.StructureUtils;
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverter;
-import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
 
 public abstract class Structure implements IStructure {
 
@@ -31,39 +34,82 @@ public abstract class Structure implements IStructure {
     public @interface ByReference {
     }
 
-    public record FieldInfo(Field field, VarHandle nativeHandle, VarHandle javaHandle, ITypeConverter converter) {
+    // nested structures and fixed length arrays are stored inline and have no native handle
+    public record FieldInfo(Field field, VarHandle nativeHandle, VarHandle javaHandle, ITypeConverter converter, long offset,
+                            MemoryLayout layout) {
     }
 
-    public record StructureInfo(StructLayout layout, Map<Field, FieldInfo> fields) {
+    // byte range of a field in the layout, the field info is null for structures bound at compile time and unions,
+    // the name is null for unions
+    public record FieldSlice(String name, long offset, long size, FieldInfo fieldInfo) {
     }
 
-    protected static final Map<Class<?>, StructureInfo> LAYOUTS;
-
-    static {
-        LAYOUTS = new HashMap<>();
+    public record StructureInfo(GroupLayout layout, Map<Field, FieldInfo> fields, IStructureAccessor<IStructure> accessor,
+                                List<FieldSlice> slices) {
     }
 
+    // resolved once per class without locking, concurrent first uses may compute the same info
+    private static final ClassValue<StructureInfo> INFOS = new ClassValue<>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected StructureInfo computeValue(Class<?> type) {
+            return StructureUtils.createStructInfo((Class<? extends IStructure>) type);
+        }
+    };
+    private static final ClassValue<Constructor<?>> CONSTRUCTORS = new ClassValue<>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            try {
+                final Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                throw new NativeException("Struct " + type.getCanonicalName() + " has no accessible no-arg constructor", ex);
+            }
+        }
+    };
+
     private final StructureInfo structureInfo;
 
     private Memory structMem;
     private UpdatePolicy readPolicy;
     private UpdatePolicy writePolicy;
+    // native content as of the last synchronization, only kept for shadow policies
+    private MemorySegment shadow;
+    private MemorySegment staging;
+    // indexes of the slices whose java values changed, only allocated once a field was marked
+    private BitSet dirty;
 
     protected Structure() {
-        this(null);
+        this((Pointer) null);
     }
 
     protected Structure(Pointer structPtr) {
         this.readPolicy = UpdatePolicy.AFTER_USED;
         this.writePolicy = UpdatePolicy.AFTER_USED;
-        final Class<? extends IStructure> structureClass = this.getClass();
-        synchronized (LAYOUTS) {
-            this.structureInfo = LAYOUTS.computeIfAbsent(structureClass, sC -> StructureUtils.createStructInfo(structureClass));
-        }
+        this.structureInfo = Structure.getStructureInfo(this.getClass());
         if (structPtr == null) {
+            // native allocations are zeroed already
             this.structMem = new Memory(MemorySegment.allocateNative(this.structureInfo.layout, SegmentScope.auto()));
-            this.structMem.zero();
+        } else {
+            this.structMem = new Memory(MemorySegment.ofAddress(structPtr.getAddress(), this.structureInfo.layout.byteSize()));
+        }
+    }
+
+    protected Structure(SegmentAllocator allocator) {
+        this(allocator, true);
+    }
+
+    // callers which write every field right away may skip zeroing, the memory then holds whatever the allocator returned
+    protected Structure(SegmentAllocator allocator, boolean zero) {
+        this.readPolicy = UpdatePolicy.AFTER_USED;
+        this.writePolicy = UpdatePolicy.AFTER_USED;
+        this.structureInfo = Structure.getStructureInfo(this.getClass());
+        final MemorySegment segment = allocator.allocate(this.structureInfo.layout);
+        if (zero) {
+            segment.fill((byte) 0);
         }
+        this.structMem = new Memory(segment);
     }
 
     @Override
@@ -71,18 +117,11 @@ public abstract class Structure implements IStructure {
         if (this.structMem.isNullPtr()) {
             return;
         }
-        for (FieldInfo(
-                Field field, VarHandle nativeHandle, VarHandle javaHandle, ITypeConverter converter
-        ) : this.structureInfo.fields.values()) {
-            if (converter != null) {
-                javaHandle.set(this, converter.toJava(nativeHandle.get(this.structMem.getSegment()), new TypeConstructionContext(field.getType())));
-                continue;
-            }
-            if (!ConversionUtils.isPrimitiveOrBoxedPrimitive(field.getType())) {
-                throw new NativeException("Cannot convert between java type " + field.getType().getCanonicalName() + " and native type");
-            }
-            javaHandle.set(this, nativeHandle.get(this.structMem.getSegment()));
+        this.readFrom(this.structMem.getSegment());
+        if (this.shadow != null) {
+            this.shadow.copyFrom(this.structMem.getSegment());
         }
+        this.clearDirty();
     }
 
     @Override
@@ -90,17 +129,228 @@ public abstract class Structure implements IStructure {
         if (this.structMem.isNullPtr()) {
             return;
         }
-        for (FieldInfo(
-                Field field, VarHandle nativeHandle, VarHandle javaHandle, ITypeConverter converter
-        ) : this.structureInfo.fields.values()) {
-            if (converter != null) {
-                nativeHandle.set(this.structMem.getSegment(), converter.toNative(javaHandle.get(this), new TypeConstructionContext(field.getType())));
+        this.writeTo(this.structMem.getSegment());
+        if (this.shadow != null) {
+            this.shadow.copyFrom(this.structMem.getSegment());
+        }
+        this.clearDirty();
+    }
+
+    // marks a field whose java value changed, structures with the DIRTY write policy only write marked fields
+    public void markDirty(String fieldName) {
+        if (this.structureInfo.layout.memberLayouts().stream().noneMatch(m -> m.name().filter(fieldName::equals).isPresent())) {
+            throw new NativeException("Struct " + this.getClass().getCanonicalName() + " has no field " + fieldName);
+        }
+        final List<FieldSlice> slices = this.structureInfo.slices;
+        for (int i = 0; i < slices.size(); i++) {
+            final String name = slices.get(i).name;
+            // unions are synchronized as a whole
+            if (name == null || name.equals(fieldName)) {
+                if (this.dirty == null) {
+                    this.dirty = new BitSet(slices.size());
+                }
+                this.dirty.set(i);
+                return;
             }
-            if (!ConversionUtils.isPrimitiveOrBoxedPrimitive(field.getType())) {
-                throw new NativeException("Cannot convert between java type " + field.getType().getCanonicalName() + " and native type");
+        }
+        throw new NativeException("Struct " + this.getClass().getCanonicalName() + " has no field " + fieldName);
+    }
+
+    public boolean isDirty() {
+        return this.dirty != null && !this.dirty.isEmpty();
+    }
+
+    private void clearDirty() {
+        if (this.dirty != null) {
+            this.dirty.clear();
+        }
+    }
+
+    // writes only the marked fields, nothing is encoded if no field was marked
+    private void writeDirty() {
+        if (this.structMem.isNullPtr() || !this.isDirty()) {
+            return;
+        }
+        final MemorySegment segment = this.structMem.getSegment();
+        final List<FieldSlice> slices = this.structureInfo.slices;
+        if (!this.hasFieldSlices()) {
+            // accessors generated at compile time and unions cannot encode single fields, only the marked bytes are transferred
+            final MemorySegment staging = this.stage(segment);
+            for (int i = this.dirty.nextSetBit(0); i >= 0; i = this.dirty.nextSetBit(i + 1)) {
+                final FieldSlice slice = slices.get(i);
+                MemorySegment.copy(staging, slice.offset, segment, slice.offset, slice.size);
+                if (this.shadow != null) {
+                    MemorySegment.copy(staging, slice.offset, this.shadow, slice.offset, slice.size);
+                }
             }
-            nativeHandle.set(this.structMem.getSegment(), javaHandle.get(this));
+            this.dirty.clear();
+            return;
         }
+        for (int i = this.dirty.nextSetBit(0); i >= 0; i = this.dirty.nextSetBit(i + 1)) {
+            final FieldSlice slice = slices.get(i);
+            StructureAccessors.writeField(slice.fieldInfo, this, segment);
+            if (this.shadow != null) {
+                MemorySegment.copy(segment, slice.offset, this.shadow, slice.offset, slice.size);
+            }
+        }
+        this.dirty.clear();
+    }
+
+    // reads every field except the marked ones, whose pending java changes are kept
+    private void readDirty() {
+        if (!this.isDirty()) {
+            this.read();
+            return;
+        }
+        if (this.structMem.isNullPtr()) {
+            return;
+        }
+        final MemorySegment segment = this.structMem.getSegment();
+        final List<FieldSlice> slices = this.structureInfo.slices;
+        if (!this.hasFieldSlices()) {
+            // single fields cannot be decoded, the unmarked bytes of the native memory are merged into the encoded java
+            // values and decoded as a whole
+            final MemorySegment staging = this.stage(segment);
+            for (int i = this.dirty.nextClearBit(0); i < slices.size(); i = this.dirty.nextClearBit(i + 1)) {
+                final FieldSlice slice = slices.get(i);
+                MemorySegment.copy(segment, slice.offset, staging, slice.offset, slice.size);
+                if (this.shadow != null) {
+                    MemorySegment.copy(segment, slice.offset, this.shadow, slice.offset, slice.size);
+                }
+            }
+            this.readFrom(staging);
+            return;
+        }
+        for (int i = 0; i < slices.size(); i++) {
+            final FieldSlice slice = slices.get(i);
+            if (!this.dirty.get(i)) {
+                StructureAccessors.readField(slice.fieldInfo, this, segment);
+                if (this.shadow != null) {
+                    MemorySegment.copy(segment, slice.offset, this.shadow, slice.offset, slice.size);
+                }
+            }
+        }
+    }
+
+    private boolean hasFieldSlices() {
+        return this.structureInfo.slices.stream().allMatch(slice -> slice.fieldInfo != null);
+    }
+
+    // the java values encoded over a copy of the native memory, so bytes which are not encoded keep their native content
+    private MemorySegment stage(MemorySegment segment) {
+        if (this.staging == null) {
+            this.staging = Structure.allocateHeap(segment.byteSize());
+        }
+        this.staging.copyFrom(segment);
+        this.writeTo(this.staging);
+        return this.staging;
+    }
+
+    // decodes only the fields whose native memory differs from the shadow copy
+    private void readShadowed() {
+        if (this.structMem.isNullPtr()) {
+            return;
+        }
+        final MemorySegment segment = this.structMem.getSegment();
+        if (this.structureInfo.fields.isEmpty()) {
+            // accessors generated at compile time cannot decode single fields
+            if (segment.mismatch(this.shadow) != -1) {
+                this.read();
+            }
+            return;
+        }
+        for (final FieldSlice slice : this.structureInfo.slices) {
+            final long end = slice.offset + slice.size;
+            if (MemorySegment.mismatch(segment, slice.offset, end, this.shadow, slice.offset, end) != -1) {
+                MemorySegment.copy(segment, slice.offset, this.shadow, slice.offset, slice.size);
+                if (slice.fieldInfo == null) {
+                    this.readFrom(segment);
+                } else {
+                    StructureAccessors.readField(slice.fieldInfo, this, segment);
+                }
+            }
+        }
+    }
+
+    // encodes all fields into the staging copy and transfers only those which differ from the shadow copy
+    private void writeShadowed() {
+        if (this.structMem.isNullPtr()) {
+            return;
+        }
+        final MemorySegment segment = this.structMem.getSegment();
+        if (this.staging == null) {
+            this.staging = Structure.allocateHeap(segment.byteSize());
+        }
+        // bytes which are not encoded, e.g. inactive union members, stay unchanged
+        this.staging.copyFrom(this.shadow);
+        this.writeTo(this.staging);
+        for (final FieldSlice slice : this.structureInfo.slices) {
+            final long end = slice.offset + slice.size;
+            if (MemorySegment.mismatch(this.staging, slice.offset, end, this.shadow, slice.offset, end) != -1) {
+                MemorySegment.copy(this.staging, slice.offset, segment, slice.offset, slice.size);
+                MemorySegment.copy(this.staging, slice.offset, this.shadow, slice.offset, slice.size);
+            }
+        }
+        this.clearDirty();
+    }
+
+    // moves the structure onto other memory of the same layout, used for array elements
+    void bind(MemorySegment segment) {
+        this.structMem = new Memory(segment);
+        if (this.shadow != null) {
+            this.shadow.copyFrom(segment);
+        }
+        this.clearDirty();
+    }
+
+    // decodes the fields from memory of this layout without touching the memory of the structure
+    public void readFrom(MemorySegment segment) {
+        if (this.structureInfo.accessor != null) {
+            this.structureInfo.accessor.read(this, segment);
+            return;
+        }
+        for (final FieldInfo fieldInfo : this.structureInfo.fields.values()) {
+            StructureAccessors.readField(fieldInfo, this, segment);
+        }
+    }
+
+    // encodes the fields into memory of this layout, e.g. the memory of an enclosing structure
+    public void writeTo(MemorySegment segment) {
+        if (this.structureInfo.accessor != null) {
+            this.structureInfo.accessor.write(this, segment);
+            return;
+        }
+        for (final FieldInfo fieldInfo : this.structureInfo.fields.values()) {
+            StructureAccessors.writeField(fieldInfo, this, segment);
+        }
+    }
+
+    // copies memory holding a structure of the same layout, e.g. a structure returned by value, and reads it
+    public void copyFrom(MemorySegment source) {
+        if (this.structMem.isNullPtr()) {
+            return;
+        }
+        this.structMem.getSegment().copyFrom(source);
+        this.read();
+    }
+
+    @Override
+    public Object toJava(Object nativeObj) {
+        final MemorySegment segment = (MemorySegment) nativeObj;
+        if (segment.address() == 0) {
+            return null;
+        }
+        final Structure structure = Structure.newInstance(this.getClass());
+        if (StructureUtils.isByReference(this.getClass())) {
+            // returned pointers refer to memory owned by native code
+            // this is the converter instance, which was created without running a constructor
+            structure.bind(MemorySegment.ofAddress(segment.address(), structure.structureInfo.layout.byteSize()));
+            structure.read();
+        } else {
+            // the returned memory is reused by the next call
+            structure.copyFrom(segment);
+        }
+        return structure;
     }
 
     @Override
@@ -118,7 +368,11 @@ public abstract class Structure implements IStructure {
         if (this.readPolicy == UpdatePolicy.NEVER) {
             return;
         }
-        if (this.readPolicy == UpdatePolicy.ALWAYS || fromUsage) {
+        if (this.readPolicy == UpdatePolicy.DIRTY) {
+            this.readDirty();
+        } else if (this.readPolicy == UpdatePolicy.SHADOW) {
+            this.readShadowed();
+        } else if (this.readPolicy == UpdatePolicy.ALWAYS || fromUsage) {
             this.read();
         }
     }
@@ -126,6 +380,7 @@ public abstract class Structure implements IStructure {
     @Override
     public void setReadPolicy(UpdatePolicy readPolicy) {
         this.readPolicy = readPolicy;
+        this.updateShadow();
     }
 
     @Override
@@ -133,7 +388,11 @@ public abstract class Structure implements IStructure {
         if (this.writePolicy == UpdatePolicy.NEVER) {
             return;
         }
-        if (this.writePolicy == UpdatePolicy.ALWAYS || fromUsage) {
+        if (this.writePolicy == UpdatePolicy.DIRTY) {
+            this.writeDirty();
+        } else if (this.writePolicy == UpdatePolicy.SHADOW) {
+            this.writeShadowed();
+        } else if (this.writePolicy == UpdatePolicy.ALWAYS || fromUsage) {
             this.write();
         }
     }
@@ -141,6 +400,35 @@ public abstract class Structure implements IStructure {
     @Override
     public void setWritePolicy(UpdatePolicy writePolicy) {
         this.writePolicy = writePolicy;
+        this.updateShadow();
+    }
+
+    private void updateShadow() {
+        if (this.readPolicy != UpdatePolicy.SHADOW && this.writePolicy != UpdatePolicy.SHADOW) {
+            this.shadow = null;
+            this.staging = null;
+        } else if (this.shadow == null && !this.structMem.isNullPtr()) {
+            // the current native content counts as synchronized
+            this.shadow = Structure.allocateHeap(this.structMem.getSegment().byteSize());
+            this.shadow.copyFrom(this.structMem.getSegment());
+        }
+    }
+
+    public static <T extends Structure> T newInstance(Class<T> structureClass) {
+        try {
+            return structureClass.cast(CONSTRUCTORS.get(structureClass).newInstance());
+        } catch (ReflectiveOperationException ex) {
+            throw new NativeException("Failed to initialize struct " + structureClass.getCanonicalName(), ex);
+        }
+    }
+
+    static StructureInfo getStructureInfo(Class<? extends IStructure> structureClass) {
+        return INFOS.get(structureClass);
+    }
+
+    // long backed to keep every field of the layout aligned
+    private static MemorySegment allocateHeap(long size) {
+        return MemorySegment.ofArray(new long[(int) ((size + Long.BYTES - 1) / Long.BYTES)]).asSlice(0, size);
     }
 
 }
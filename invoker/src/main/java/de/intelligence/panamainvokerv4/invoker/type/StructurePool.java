@@ -0,0 +1,64 @@
+package de.intelligence.panamainvokerv4.invoker.type;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Recycles structures together with their native memory for code which creates many short-lived structures.
+ * Released structures keep their field values and memory content, so callers either write every field after
+ * {@link #acquire()} or use {@link #acquireZeroed()}.
+ * <p>
+ * Pools are not thread safe, a pool is meant to be used by a single thread.
+ */
+public final class StructurePool<T extends Structure> {
+
+    private final Class<T> structureClass;
+    private final int capacity;
+    private final ArrayDeque<T> free;
+
+    public StructurePool(Class<T> structureClass, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.structureClass = Objects.requireNonNull(structureClass);
+        this.capacity = capacity;
+        this.free = new ArrayDeque<>(capacity);
+    }
+
+    public T acquire() {
+        final T structure = this.free.pollLast();
+        return structure == null ? Structure.newInstance(this.structureClass) : structure;
+    }
+
+    // clears the memory and the fields of a recycled structure
+    public T acquireZeroed() {
+        final T structure = this.free.pollLast();
+        if (structure == null) {
+            return Structure.newInstance(this.structureClass);
+        }
+        structure.segment().fill((byte) 0);
+        structure.read();
+        return structure;
+    }
+
+    // structures beyond the capacity are left to the garbage collector, a structure released twice would be handed
+    // out to two callers
+    public void release(T structure) {
+        if (structure == null) {
+            return;
+        }
+        for (final T free : this.free) {
+            if (free == structure) {
+                throw new IllegalArgumentException("structure was released already");
+            }
+        }
+        if (this.free.size() < this.capacity) {
+            this.free.addLast(structure);
+        }
+    }
+
+    public int size() {
+        return this.free.size();
+    }
+
+}
@@ -1,8 +1,20 @@
 package de.intelligence.panamainvokerv4.invoker.type;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.reflection.StructureAccessors;
+
+/**
+ * Native union, all fields share the memory at offset zero. Only the active member is read and written, a union
+ * without active member transfers nothing.
+ */
 public abstract class Union extends Structure {
 
-    private FieldInfo fieldInfo;
+    private FieldInfo activeMember;
 
     public Union() {
         super();
@@ -12,4 +24,42 @@ public abstract class Union extends Structure {
         super(ptr);
     }
 
+    public Union(SegmentAllocator allocator) {
+        super(allocator);
+    }
+
+    public Union(SegmentAllocator allocator, boolean zero) {
+        super(allocator, zero);
+    }
+
+    public void setActiveMember(String fieldName) {
+        this.activeMember = Structure.getStructureInfo(this.getClass()).fields().entrySet().stream()
+                .filter(e -> e.getKey().getName().equals(fieldName))
+                .map(Map.Entry::getValue)
+                .findFirst()
+                .orElseThrow(() -> new NativeException("Union " + this.getClass().getCanonicalName() + " has no member " + fieldName));
+    }
+
+    public void clearActiveMember() {
+        this.activeMember = null;
+    }
+
+    public Field getActiveMember() {
+        return this.activeMember == null ? null : this.activeMember.field();
+    }
+
+    @Override
+    public void readFrom(MemorySegment segment) {
+        if (this.activeMember != null) {
+            StructureAccessors.readField(this.activeMember, this, segment);
+        }
+    }
+
+    @Override
+    public void writeTo(MemorySegment segment) {
+        if (this.activeMember != null) {
+            StructureAccessors.writeField(this.activeMember, this, segment);
+        }
+    }
+
 }
@@ -57,9 +57,13 @@ public final class WString implements CharSequence, Comparable<WString>, NativeT
 
     @Override
     public Object toNative() {
+        return this.toNative(SegmentAllocator.nativeAllocator(SegmentScope.auto()));
+    }
+
+    @Override
+    public Object toNative(SegmentAllocator allocator) {
         //TODO I dont like this
-        final MemorySegment segment = SegmentAllocator.nativeAllocator(SegmentScope.auto())
-                .allocateArray(ValueLayout.JAVA_CHAR, (long) this.delegate.length() + 1);
+        final MemorySegment segment = allocator.allocateArray(ValueLayout.JAVA_CHAR, (long) this.delegate.length() + 1);
         segment.asByteBuffer().order(ByteOrder.nativeOrder()).asCharBuffer().put(this.delegate).put('\0');
         return segment;
     }
@@ -4,6 +4,11 @@ public enum UpdatePolicy {
 
     NEVER,
     AFTER_USED,
-    ALWAYS
+    ALWAYS,
+    // synchronizes on every use, but only writes the fields marked through Structure.markDirty, reads keep marked fields
+    DIRTY,
+    // synchronizes on every use and compares native memory against a shadow copy of the last synchronization, reads
+    // decode only the fields native code changed, writes encode every field but only transfer the changed ones
+    SHADOW
 
 }
@@ -0,0 +1,186 @@
+package de.intelligence.panamainvokerv4.invoker.util;
+
+import java.lang.foreign.Linker;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.Arrays;
+
+import de.intelligence.panamainvokerv4.invoker.annotation.Critical;
+import de.intelligence.panamainvokerv4.invoker.annotation.In;
+import de.intelligence.panamainvokerv4.invoker.annotation.InOut;
+import de.intelligence.panamainvokerv4.invoker.annotation.Out;
+import de.intelligence.panamainvokerv4.invoker.annotation.Persistent;
+import de.intelligence.panamainvokerv4.invoker.annotation.Result;
+import de.intelligence.panamainvokerv4.invoker.annotation.ZeroCopy;
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+
+/**
+ * Per-method options which influence how a native function is linked and how its arguments are marshalled.
+ */
+public final class CallOptions {
+
+    public static final CallOptions NONE = new CallOptions(new boolean[0], false);
+
+    private static final Linker.Option[] NO_LINKER_OPTIONS = new Linker.Option[0];
+
+    private final boolean[] persistent;
+    private final boolean[] zeroCopy;
+    private final Direction[] directions;
+    private final boolean critical;
+
+    public CallOptions(boolean[] persistent, boolean critical) {
+        this(persistent, new boolean[0], critical);
+    }
+
+    public CallOptions(boolean[] persistent, boolean[] zeroCopy, boolean critical) {
+        this(persistent, zeroCopy, new Direction[0], critical);
+    }
+
+    public CallOptions(boolean[] persistent, boolean[] zeroCopy, Direction[] directions, boolean critical) {
+        this.persistent = persistent.clone();
+        this.zeroCopy = zeroCopy.clone();
+        this.directions = directions.clone();
+        this.critical = critical;
+    }
+
+    public static CallOptions of(Method method) {
+        final Class<?>[] paramTypes = method.getParameterTypes();
+        final boolean[] persistent = new boolean[paramTypes.length];
+        final boolean[] zeroCopy = new boolean[paramTypes.length];
+        final Direction[] directions = new Direction[paramTypes.length];
+        for (int i = 0; i < paramTypes.length; i++) {
+            final Parameter parameter = method.getParameters()[i];
+            persistent[i] = parameter.isAnnotationPresent(Persistent.class);
+            zeroCopy[i] = CallOptions.isPrimitiveArray(paramTypes[i])
+                    && (method.isAnnotationPresent(ZeroCopy.class) || parameter.isAnnotationPresent(ZeroCopy.class));
+            directions[i] = CallOptions.getDirection(method, parameter);
+        }
+        return new CallOptions(persistent, zeroCopy, directions, method.isAnnotationPresent(Critical.class));
+    }
+
+    private static Direction getDirection(Method method, Parameter parameter) {
+        final boolean in = parameter.isAnnotationPresent(In.class);
+        final boolean out = parameter.isAnnotationPresent(Out.class);
+        final boolean inOut = parameter.isAnnotationPresent(InOut.class);
+        final boolean result = parameter.isAnnotationPresent(Result.class);
+        if ((in ? 1 : 0) + (out ? 1 : 0) + (inOut ? 1 : 0) + (result ? 1 : 0) > 1) {
+            throw new NativeException("Conflicting direction annotations on parameter " + parameter.getName() + " of method " + method.getName());
+        }
+        if ((in || out || inOut || result) && parameter.getType().isPrimitive()) {
+            throw new NativeException("Direction annotation on primitive parameter " + parameter.getName() + " of method " + method.getName());
+        }
+        return in ? Direction.IN : out ? Direction.OUT : result ? Direction.RESULT : Direction.IN_OUT;
+    }
+
+    // only arrays of primitives share their memory layout with native code
+    public static boolean isPrimitiveArray(Class<?> type) {
+        return type.isArray() && type.getComponentType().isPrimitive() && type.getComponentType() != boolean.class;
+    }
+
+    // arguments whose native memory has to outlive the call
+    public boolean isPersistent(int index) {
+        return index < this.persistent.length && this.persistent[index];
+    }
+
+    // arrays which are passed as heap segments, always false on java 20 whose linker cannot pass them
+    public boolean isZeroCopy(int index) {
+        return index < this.zeroCopy.length && this.zeroCopy[index] && LinkerOptions.criticalHeapAccess().isPresent();
+    }
+
+    // whether zero-copy was requested for any parameter, regardless of the runtime support
+    public boolean hasZeroCopy() {
+        for (final boolean flag : this.zeroCopy) {
+            if (flag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // whether the content of the argument is passed to native code before the call
+    public boolean isCopyIn(int index) {
+        return this.getDirection(index) != Direction.OUT;
+    }
+
+    // whether the content of the argument is read back from native code after the call
+    public boolean isCopyOut(int index) {
+        return this.getDirection(index) != Direction.IN;
+    }
+
+    // parameter receiving a structure returned by value, -1 if the method returns it as a new structure
+    public int getResultIndex() {
+        for (int i = 0; i < this.directions.length; i++) {
+            if (this.directions[i] == Direction.RESULT) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // options of the native signature, in which the given parameter does not exist
+    CallOptions withoutParameter(int index) {
+        return new CallOptions(CallOptions.remove(this.persistent, index), CallOptions.remove(this.zeroCopy, index),
+                CallOptions.remove(this.directions, index), this.critical);
+    }
+
+    private static boolean[] remove(boolean[] flags, int index) {
+        if (index >= flags.length) {
+            return flags;
+        }
+        final boolean[] removed = new boolean[flags.length - 1];
+        System.arraycopy(flags, 0, removed, 0, index);
+        System.arraycopy(flags, index + 1, removed, index, removed.length - index);
+        return removed;
+    }
+
+    private static Direction[] remove(Direction[] directions, int index) {
+        if (index >= directions.length) {
+            return directions;
+        }
+        final Direction[] removed = new Direction[directions.length - 1];
+        System.arraycopy(directions, 0, removed, 0, index);
+        System.arraycopy(directions, index + 1, removed, index, removed.length - index);
+        return removed;
+    }
+
+    private Direction getDirection(int index) {
+        return index < this.directions.length && this.directions[index] != null ? this.directions[index] : Direction.IN_OUT;
+    }
+
+    public boolean isCritical() {
+        return this.critical;
+    }
+
+    public Linker.Option[] getLinkerOptions() {
+        if (this.hasZeroCopy() && LinkerOptions.criticalHeapAccess().isPresent()) {
+            return new Linker.Option[]{LinkerOptions.criticalHeapAccess().get()};
+        }
+        if (this.critical) {
+            return LinkerOptions.critical().map(o -> new Linker.Option[]{o}).orElse(NO_LINKER_OPTIONS);
+        }
+        return NO_LINKER_OPTIONS;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof CallOptions other && this.critical == other.critical && Arrays.equals(this.persistent, other.persistent)
+                && Arrays.equals(this.zeroCopy, other.zeroCopy) && Arrays.equals(this.directions, other.directions);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(this.persistent);
+        result = 31 * result + Arrays.hashCode(this.zeroCopy);
+        result = 31 * result + Arrays.hashCode(this.directions);
+        return 31 * result + Boolean.hashCode(this.critical);
+    }
+
+    /**
+     * Direction in which the content of array and structure arguments is transferred, see {@link In}, {@link Out}, {@link InOut}
+     * and {@link Result}.
+     */
+    public enum Direction {
+        IN, OUT, IN_OUT, RESULT
+    }
+
+}
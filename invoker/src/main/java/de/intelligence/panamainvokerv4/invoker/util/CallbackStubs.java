@@ -0,0 +1,184 @@
+package de.intelligence.panamainvokerv4.invoker.util;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentAllocator;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.intelligence.panamainvokerv4.invoker.Panama;
+import de.intelligence.panamainvokerv4.invoker.annotation.Callback;
+import de.intelligence.panamainvokerv4.invoker.converter.ConverterHandles;
+import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverterRegistry;
+import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+
+/**
+ * Upcall stubs of callbacks, created once per callback interface and target. A stub and its target are strongly
+ * referenced until the target is released, so callbacks should be kept and reused instead of being created for
+ * every call. Callbacks return primitives or pointers only, a stub called for the whole lifetime of the application
+ * must not allocate per call. Exceptions thrown by a callback terminate the JVM, as for every upcall.
+ */
+public final class CallbackStubs {
+
+    private static final ClassValue<CallbackType> TYPES = new ClassValue<>() {
+        @Override
+        protected CallbackType computeValue(Class<?> type) {
+            return CallbackType.of(type);
+        }
+    };
+    private static final Map<Key, Stub> STUBS = new ConcurrentHashMap<>();
+    // pointer converters pass existing memory through and never allocate
+    private static final SegmentAllocator NO_ALLOCATION = (byteSize, byteAlignment) -> {
+        throw new NativeException("Callbacks cannot allocate the memory they return");
+    };
+
+    private CallbackStubs() {
+    }
+
+    public static boolean isCallback(Class<?> type) {
+        return type.isInterface() && type.isAnnotationPresent(Callback.class);
+    }
+
+    // the callback interface implemented by the given class, null if there is none
+    public static Class<?> getCallbackInterface(Class<?> type) {
+        if (CallbackStubs.isCallback(type)) {
+            return type;
+        }
+        for (final Class<?> implemented : type.getInterfaces()) {
+            if (CallbackStubs.isCallback(implemented)) {
+                return implemented;
+            }
+        }
+        return null;
+    }
+
+    public static FunctionDescriptor getDescriptor(Class<?> callbackInterface) {
+        return TYPES.get(callbackInterface).descriptor;
+    }
+
+    public static MemorySegment get(Class<?> callbackInterface, Object target) {
+        if (target == null) {
+            return MemorySegment.NULL;
+        }
+        final Key key = new Key(callbackInterface, target);
+        final Stub stub = STUBS.get(key);
+        if (stub != null) {
+            return stub.segment;
+        }
+        return STUBS.computeIfAbsent(key, k -> TYPES.get(callbackInterface).createStub(target)).segment;
+    }
+
+    // frees the stubs of the target, native code must not call them afterwards
+    public static void release(Object target) {
+        STUBS.entrySet().removeIf(e -> {
+            if (e.getKey().target != target) {
+                return false;
+            }
+            e.getValue().arena.close();
+            return true;
+        });
+    }
+
+    public static void releaseAll() {
+        STUBS.entrySet().removeIf(e -> {
+            e.getValue().arena.close();
+            return true;
+        });
+    }
+
+    public static int size() {
+        return STUBS.size();
+    }
+
+    // the callback method adapted to native carriers, primitives are passed through without conversion, returned
+    // pointers are converted by the return filter
+    private record CallbackType(MethodHandle handle, FunctionDescriptor descriptor, MethodHandle returnFilter) {
+
+        private static CallbackType of(Class<?> callbackInterface) {
+            if (!CallbackStubs.isCallback(callbackInterface)) {
+                throw new NativeException("Callbacks have to be interfaces annotated with @Callback: " + callbackInterface.getCanonicalName());
+            }
+            final List<Method> methods = Arrays.stream(callbackInterface.getMethods())
+                    .filter(m -> Modifier.isAbstract(m.getModifiers()))
+                    .toList();
+            if (methods.size() != 1) {
+                throw new NativeException("Callback " + callbackInterface.getCanonicalName() + " needs exactly one abstract method");
+            }
+            final Method method = methods.get(0);
+            final ITypeConverterRegistry registry = Panama.getNewConverters();
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.privateLookupIn(callbackInterface, MethodHandles.lookup()).unreflect(method);
+            } catch (IllegalAccessException ex) {
+                throw new NativeException("Failed to access callback method " + method, ex);
+            }
+            final Class<?>[] paramTypes = method.getParameterTypes();
+            final MemoryLayout[] paramLayouts = new MemoryLayout[paramTypes.length];
+            for (int i = 0; i < paramTypes.length; i++) {
+                paramLayouts[i] = registry.getNativeMemoryLayout(paramTypes[i]);
+                if (!paramTypes[i].isPrimitive()) {
+                    // the receiver precedes the arguments
+                    handle = MethodHandles.filterArguments(handle, i + 1, ConverterHandles.toJava(registry.getConverterInstance(paramTypes[i]),
+                            paramTypes[i], ConverterHandles.getCarrier(paramLayouts[i])));
+                }
+            }
+            final Class<?> retType = method.getReturnType();
+            if (retType == void.class) {
+                return new CallbackType(handle, FunctionDescriptor.ofVoid(paramLayouts), null);
+            }
+            if (!retType.isPrimitive() && !Pointer.class.isAssignableFrom(retType)) {
+                throw new NativeException("Callback " + callbackInterface.getCanonicalName()
+                        + " has to return a primitive or a pointer, returned memory would have to be allocated per call");
+            }
+            final MemoryLayout retLayout = registry.getNativeMemoryLayout(retType);
+            final MethodHandle returnFilter = retType.isPrimitive() ? null
+                    : MethodHandles.insertArguments(ConverterHandles.toNative(registry.getConverterInstance(retType),
+                    retType, ConverterHandles.getCarrier(retLayout)), 0, NO_ALLOCATION);
+            return new CallbackType(handle, FunctionDescriptor.of(retLayout, paramLayouts), returnFilter);
+        }
+
+        private Stub createStub(Object target) {
+            final Arena arena = Arena.openShared();
+            try {
+                MethodHandle handle = this.handle.bindTo(target);
+                if (this.returnFilter != null) {
+                    handle = MethodHandles.filterReturnValue(handle, this.returnFilter);
+                }
+                return new Stub(Linker.nativeLinker().upcallStub(handle, this.descriptor, arena.scope()), arena);
+            } catch (RuntimeException ex) {
+                arena.close();
+                throw new NativeException("Failed to create upcall stub for " + target, ex);
+            }
+        }
+
+    }
+
+    private record Stub(MemorySegment segment, Arena arena) {
+    }
+
+    // callbacks are identified by their instance, not by equality
+    private record Key(Class<?> type, Object target) {
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other && this.type == other.type && this.target == other.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.type.hashCode() + System.identityHashCode(this.target);
+        }
+
+    }
+
+}
@@ -1,29 +1,39 @@
 package de.intelligence.panamainvokerv4.invoker.util;
 
 import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.StructLayout;
+import java.lang.foreign.UnionLayout;
+import java.lang.foreign.GroupLayout;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import de.intelligence.panamainvokerv4.invoker.Panama;
 import de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder;
+import de.intelligence.panamainvokerv4.invoker.annotation.FixedLength;
 import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.reflection.GeneratedBindings;
+import de.intelligence.panamainvokerv4.invoker.type.IStructure;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureAccessor;
+import de.intelligence.panamainvokerv4.invoker.type.Structure;
+import de.intelligence.panamainvokerv4.invoker.type.Union;
 import de.intelligence.panamainvokerv4.invoker.converter.context.TypeConstructionContext;
 
 public final class ConversionUtils {
 
-    private static final Map<Class<?>, StructLayout> STRUCTS;
-
-    static {
-        STRUCTS = new HashMap<>();
-    }
+    // computed once per struct class without a global lock
+    private static final ClassValue<GroupLayout> STRUCTS = new ClassValue<>() {
+        @Override
+        protected GroupLayout computeValue(Class<?> type) {
+            return ConversionUtils.computeStructLayout(type);
+        }
+    };
 
     private ConversionUtils() {
     }
@@ -38,18 +48,19 @@ public final class ConversionUtils {
         return Panama.getNewConverters().isConverterAvailable(clazz) || clazz == Object.class;
     }
 
-    public static StructLayout convertStruct(Class<?> struct) {
+    public static GroupLayout convertStruct(Class<?> struct) {
         // 1. check if is valid struct
         if (!isValidStruct(struct)) {
             throw new NativeException("Specified class is not a struct: " + struct.getCanonicalName());
         }
-
-        synchronized (STRUCTS) {
-            if (STRUCTS.containsKey(struct)) {
-                return STRUCTS.get(struct);
-            }
+        final Optional<IStructureAccessor<IStructure>> accessor = GeneratedBindings.getStructureAccessor(struct);
+        if (accessor.isPresent()) {
+            return accessor.get().getLayout();
         }
+        return STRUCTS.get(struct);
+    }
 
+    private static GroupLayout computeStructLayout(Class<?> struct) {
         // 2. check if ALL or NO fields have the field order annotation
         final List<Field> declaredFields = Arrays.stream(struct.getDeclaredFields()).collect(Collectors.toList());
         boolean atLeastOneAnnotated = declaredFields.stream().anyMatch(f -> f.isAnnotationPresent(FieldOrder.class));
@@ -83,13 +94,71 @@ public final class ConversionUtils {
             }
         }
 
-        // 4. create final layout
-        final StructLayout structLayout = MemoryLayout.structLayout(declaredFields.stream()
-                .map(f -> createMemoryLayout(f.getType()).withName(f.getName()))
-                .toArray(MemoryLayout[]::new));
-        synchronized (STRUCTS) {
-            return STRUCTS.computeIfAbsent(struct, s -> structLayout);
+        // 4. create final layout, the members of unions overlap
+        final MemoryLayout[] memberLayouts = declaredFields.stream()
+                .map(f -> createFieldLayout(f).withName(f.getName()))
+                .toArray(MemoryLayout[]::new);
+        return Union.class.isAssignableFrom(struct) ? unionLayout(memberLayouts) : structLayout(memberLayouts);
+    }
+
+    // members are aligned like a C compiler does and the size is rounded up to the alignment of the struct
+    public static StructLayout structLayout(MemoryLayout... memberLayouts) {
+        final List<MemoryLayout> padded = new ArrayList<>();
+        long offset = 0;
+        long alignment = 1;
+        for (final MemoryLayout memberLayout : memberLayouts) {
+            final long memberOffset = align(offset, memberLayout.byteAlignment());
+            if (memberOffset > offset) {
+                padded.add(MemoryLayout.paddingLayout((memberOffset - offset) * Byte.SIZE));
+            }
+            padded.add(memberLayout);
+            offset = memberOffset + memberLayout.byteSize();
+            alignment = Math.max(alignment, memberLayout.byteAlignment());
+        }
+        final long size = align(offset, alignment);
+        if (size > offset) {
+            padded.add(MemoryLayout.paddingLayout((size - offset) * Byte.SIZE));
         }
+        return MemoryLayout.structLayout(padded.toArray(MemoryLayout[]::new));
+    }
+
+    public static UnionLayout unionLayout(MemoryLayout... memberLayouts) {
+        long size = 0;
+        long alignment = 1;
+        for (final MemoryLayout memberLayout : memberLayouts) {
+            size = Math.max(size, memberLayout.byteSize());
+            alignment = Math.max(alignment, memberLayout.byteAlignment());
+        }
+        final long paddedSize = align(size, alignment);
+        if (paddedSize == size) {
+            return MemoryLayout.unionLayout(memberLayouts);
+        }
+        final MemoryLayout[] padded = Arrays.copyOf(memberLayouts, memberLayouts.length + 1);
+        padded[memberLayouts.length] = MemoryLayout.paddingLayout(paddedSize * Byte.SIZE);
+        return MemoryLayout.unionLayout(padded);
+    }
+
+    private static long align(long offset, long alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+
+    // nested structs and arrays of a fixed length are embedded, all other fields use their converter
+    public static MemoryLayout createFieldLayout(Field field) {
+        final Class<?> type = field.getType();
+        if (field.isAnnotationPresent(FixedLength.class)) {
+            if (!CallOptions.isPrimitiveArray(type)) {
+                throw new NativeException("@FixedLength requires an array of primitives except boolean, found field " + field);
+            }
+            return MemoryLayout.sequenceLayout(field.getAnnotation(FixedLength.class).value(), createMemoryLayout(type.getComponentType()));
+        }
+        if (isInlineStruct(type)) {
+            return convertStruct(type);
+        }
+        return createMemoryLayout(type);
+    }
+
+    public static boolean isInlineStruct(Class<?> type) {
+        return Structure.class.isAssignableFrom(type) && isValidStruct(type);
     }
 
     public static boolean isPrimitiveOrBoxedPrimitive(Class<?> type) {
@@ -116,11 +185,15 @@ public final class ConversionUtils {
     }
 
     public static Object convertArg(Object arg) {
+        return convertArg(arg, Panama.getNativeAllocator());
+    }
+
+    public static Object convertArg(Object arg, SegmentAllocator allocator) {
         if (arg == null) {
             return null;
         }
         final Class<?> argType = arg.getClass();
-        return Panama.getNewConverters().getConverterInstance(argType).toNative(arg, new TypeConstructionContext(argType));
+        return Panama.getNewConverters().getConverterInstance(argType).toNative(arg, new TypeConstructionContext(argType, allocator));
     }
 
     public static Object[] convertArgs(Object[] args) {
@@ -1,6 +1,7 @@
 package de.intelligence.panamainvokerv4.invoker.util;
 
 import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.GroupLayout;
 import java.lang.foreign.Linker;
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
@@ -9,27 +10,62 @@ import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
-import java.lang.reflect.Array;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 
 import de.intelligence.panamainvokerv4.invoker.Panama;
+import de.intelligence.panamainvokerv4.invoker.alloc.ReturnBufferAllocator;
+import de.intelligence.panamainvokerv4.invoker.alloc.SlabSegmentAllocator;
+import de.intelligence.panamainvokerv4.invoker.converter.ConverterHandles;
 import de.intelligence.panamainvokerv4.invoker.converter.ITypeConverterRegistry;
+import de.intelligence.panamainvokerv4.invoker.converter.instance.PrimitiveArrayConverter;
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.type.IStructure;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureView;
+import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+import de.intelligence.panamainvokerv4.invoker.type.StructArray;
+import de.intelligence.panamainvokerv4.invoker.type.Structure;
 import de.intelligence.panamainvokerv4.invoker.update.AutoReadable;
 import de.intelligence.panamainvokerv4.invoker.update.AutoWritable;
 
 public final class DynamicMethodHandle {
 
-    private static final Map<MemorySegment, List<DynamicMethodHandle>> HANDLE_CACHE;
+    private static final HandleCache HANDLE_CACHE;
+    private static final MethodHandle AUTO_WRITE;
+    private static final MethodHandle AUTO_READ;
+    private static final MethodHandle POINTER_SEGMENT;
+    private static final MethodHandle NEW_POINTER;
+    private static final MethodHandle ENTER_SCOPE;
+    private static final MethodHandle EXIT_SCOPE;
+    private static final MethodHandle COPY_RESULT;
 
     static {
-        HANDLE_CACHE = new HashMap<>();
+        HANDLE_CACHE = new HandleCache(HandleCache.getConfiguredMaxSize());
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            AUTO_WRITE = lookup.findStatic(DynamicMethodHandle.class, "autoWrite",
+                    MethodType.methodType(AutoWritable.class, AutoWritable.class));
+            AUTO_READ = lookup.findStatic(DynamicMethodHandle.class, "autoRead",
+                    MethodType.methodType(void.class, AutoReadable.class));
+            POINTER_SEGMENT = lookup.findStatic(DynamicMethodHandle.class, "segmentOf",
+                    MethodType.methodType(MemorySegment.class, Pointer.class));
+            NEW_POINTER = lookup.findConstructor(Pointer.class, MethodType.methodType(void.class, MemorySegment.class));
+            ENTER_SCOPE = lookup.findStatic(DynamicMethodHandle.class, "enterScope", MethodType.methodType(SegmentAllocator.class));
+            EXIT_SCOPE = lookup.findStatic(DynamicMethodHandle.class, "exitScope",
+                    MethodType.methodType(void.class, SegmentAllocator.class));
+            COPY_RESULT = lookup.findStatic(DynamicMethodHandle.class, "copyResult",
+                    MethodType.methodType(Structure.class, Structure.class, MemorySegment.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            // should never happen
+            throw new NativeException("Failed to find method handle", ex);
+        }
     }
 
     private final MethodHandler methodHandler;
@@ -40,6 +76,10 @@ public final class DynamicMethodHandle {
         this.methodHandle = methodHandle;
     }
 
+    public MethodHandle getMethodHandle() {
+        return this.methodHandle;
+    }
+
     public Object invokeWithArguments(Object... arguments) {
         try {
             return this.methodHandle.invokeWithArguments(arguments);
@@ -48,29 +88,28 @@ public final class DynamicMethodHandle {
         }
     }
 
-    private static DynamicMethodHandle computeOrCache(MemorySegment segment, MethodType methodType, Supplier<DynamicMethodHandle> handleSupplier) {
-        synchronized (HANDLE_CACHE) {
-            HANDLE_CACHE.computeIfAbsent(segment, s -> new ArrayList<>());
-            final List<DynamicMethodHandle> handles = HANDLE_CACHE.get(segment);
-            final Optional<DynamicMethodHandle> optHandle = handles.stream()
-                    .filter(f -> f.methodHandle.type().equals(methodType))
-                    .findFirst();
-            if (optHandle.isPresent()) {
-                return optHandle.get();
-            }
-            final DynamicMethodHandle handle = handleSupplier.get();
-            handles.add(handle);
-            return handle;
-        }
+    public static HandleCache getHandleCache() {
+        return HANDLE_CACHE;
     }
 
     public static DynamicMethodHandle auto(MemorySegment segment, Method method) {
-        return DynamicMethodHandle.auto(segment, method.getName(), method.getReturnType(), method.getParameterTypes(), method.isVarArgs());
+        return DynamicMethodHandle.auto(segment, method.getName(), method.getReturnType(), method.getParameterTypes(), method.isVarArgs(),
+                CallOptions.of(method));
     }
 
     public static DynamicMethodHandle auto(MemorySegment segment, String name, Class<?> retType, Class<?>[] paramTypes, boolean varArgs) {
-        final ITypeConverterRegistry registry = Panama.getNewConverters();
+        return DynamicMethodHandle.auto(segment, name, retType, paramTypes, varArgs, CallOptions.NONE);
+    }
+
+    public static DynamicMethodHandle auto(MemorySegment segment, String name, Class<?> retType, Class<?>[] paramTypes, boolean varArgs,
+                                           CallOptions options) {
         final MethodType methodType = MethodType.methodType(retType, paramTypes);
+        if (!varArgs && DynamicMethodHandle.isTrivial(methodType)) {
+            // the descriptor follows from the signature, no converter is involved
+            return HANDLE_CACHE.computeIfAbsent(segment, methodType, false, options,
+                    () -> createTrivial(segment, methodType, DynamicMethodHandle.trivialDescriptor(methodType), options));
+        }
+        final ITypeConverterRegistry registry = Panama.getNewConverters();
         final Supplier<DynamicMethodHandle> handleSupplier = () -> {
             // 1. validate method
             if (Void.TYPE != retType && !ConversionUtils.isTypeSupported(retType)) {
@@ -84,37 +123,294 @@ public final class DynamicMethodHandle {
             }
             // 2. create appropriate method handler
             final int numLayouts = varArgs ? paramTypes.length - 1 : paramTypes.length;
-            final MemoryLayout[] parameterLayouts = new MemoryLayout[numLayouts];
+            final int resultIndex = options.getResultIndex();
+            // the parameter receiving a structure returned by value is not passed
+            final List<MemoryLayout> parameterLayouts = new ArrayList<>(numLayouts);
             for (int i = 0; i < numLayouts; i++) {
                 if (!ConversionUtils.isTypeSupported(paramTypes[i])) {
                     throw new NativeException("Parameter type " + paramTypes[i].getCanonicalName() + " of method " + name + " is unsupported");
                 }
-                parameterLayouts[i] = registry.getNativeMemoryLayout(paramTypes[i]);
+                if (i != resultIndex) {
+                    parameterLayouts.add(registry.getNativeMemoryLayout(paramTypes[i]));
+                }
             }
             final FunctionDescriptor descriptor;
             if (Void.TYPE.equals(retType)) {
-                descriptor = FunctionDescriptor.ofVoid(parameterLayouts);
+                descriptor = FunctionDescriptor.ofVoid(parameterLayouts.toArray(MemoryLayout[]::new));
             } else {
-                descriptor = FunctionDescriptor.of(registry.getNativeMemoryLayout(retType), parameterLayouts);
-            }
-            if (varArgs) {
-                return createVariadic(segment, methodType, descriptor);
-            } else {
-                return createAutoConverter(segment, methodType, descriptor);
+                descriptor = FunctionDescriptor.of(registry.getNativeMemoryLayout(retType), parameterLayouts.toArray(MemoryLayout[]::new));
             }
+            return create(segment, methodType, descriptor, varArgs, options);
         };
-        return computeOrCache(segment, methodType, handleSupplier);
+        return HANDLE_CACHE.computeIfAbsent(segment, methodType, varArgs, options, handleSupplier);
+    }
+
+    // entry point for bindings which already know their function descriptor, e.g. generated ones
+    public static DynamicMethodHandle create(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor, boolean varArgs) {
+        return DynamicMethodHandle.create(segment, methodType, functionDescriptor, varArgs, CallOptions.NONE);
+    }
+
+    public static DynamicMethodHandle create(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor, boolean varArgs,
+                                             CallOptions options) {
+        if (varArgs && (options.isCritical() || options.hasZeroCopy())) {
+            // the linker rejects critical variadic downcalls, fail early instead of on the first call
+            throw new NativeException("Variadic functions cannot be critical or zero-copy");
+        }
+        if (options.isCritical() && Arrays.stream(methodType.parameterArray()).anyMatch(CallbackStubs::isCallback)) {
+            // critical functions must not call back into java
+            throw new NativeException("Critical functions cannot take callbacks");
+        }
+        if (options.getResultIndex() >= 0) {
+            return createWithResult(segment, methodType, functionDescriptor, varArgs, options);
+        } else if (varArgs) {
+            return createVariadic(segment, methodType, functionDescriptor, options);
+        } else if (DynamicMethodHandle.isTrivial(methodType)) {
+            return createTrivial(segment, methodType, functionDescriptor, options);
+        } else if (DynamicMethodHandle.isComposable(methodType, options)) {
+            return createComposed(segment, methodType, functionDescriptor, options);
+        } else {
+            return createAutoConverter(segment, methodType, functionDescriptor, options);
+        }
+    }
+
+    // the native signature returns the raw return buffer, which is decoded into the @Result parameter
+    public static DynamicMethodHandle createWithResult(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor,
+                                                       boolean varArgs, CallOptions options) {
+        final int resultIndex = options.getResultIndex();
+        final Class<?> resultType = methodType.parameterType(resultIndex);
+        if (!Structure.class.isAssignableFrom(resultType) || StructureUtils.isByReference(resultType)
+                || !methodType.returnType().isAssignableFrom(resultType)) {
+            throw new NativeException("@Result parameter has to be a structure returned by value, found " + resultType.getCanonicalName());
+        }
+        final MethodType nativeType = methodType.dropParameterTypes(resultIndex, resultIndex + 1).changeReturnType(MemorySegment.class);
+        final MethodHandle nativeHandle = DynamicMethodHandle.create(segment, nativeType, functionDescriptor, varArgs,
+                options.withoutParameter(resultIndex)).getMethodHandle();
+        // (Structure, nativeParams...)Structure, then the structure is moved to the position of the parameter
+        final MethodHandle target = MethodHandles.collectArguments(COPY_RESULT, 1, nativeHandle);
+        final int[] reorder = new int[target.type().parameterCount()];
+        reorder[0] = resultIndex;
+        for (int i = 1; i < reorder.length; i++) {
+            reorder[i] = i - 1 < resultIndex ? i - 1 : i;
+        }
+        final MethodType permutedType = nativeHandle.type().insertParameterTypes(resultIndex, Structure.class)
+                .changeReturnType(Structure.class);
+        return new DynamicMethodHandle(null, MethodHandles.permuteArguments(target, permutedType, reorder).asType(methodType));
+    }
+
+    // primitives are passed as they are and pointers only need their segment, so the downcall handle is used directly
+    public static DynamicMethodHandle createTrivial(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor,
+                                                    CallOptions options) {
+        MethodHandle target = DynamicMethodHandle.downcallHandle(segment, functionDescriptor, options.getLinkerOptions());
+        for (int i = 0; i < methodType.parameterCount(); i++) {
+            final Class<?> paramType = methodType.parameterType(i);
+            if (!paramType.isPrimitive()) {
+                target = MethodHandles.filterArguments(target, i, POINTER_SEGMENT.asType(MethodType.methodType(MemorySegment.class, paramType)));
+            }
+        }
+        if (methodType.returnType() == Pointer.class) {
+            target = MethodHandles.filterReturnValue(target, NEW_POINTER);
+        }
+        return new DynamicMethodHandle(null, target);
+    }
+
+    // the conversions of every parameter and the return value are resolved once and compiled into a single handle
+    public static DynamicMethodHandle createComposed(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor,
+                                                     CallOptions options) {
+        final ITypeConverterRegistry registry = Panama.getNewConverters();
+        final MethodHandle downcallHandle = DynamicMethodHandle.downcallHandle(segment, functionDescriptor, options.getLinkerOptions());
+        final MethodType downcallType = downcallHandle.type();
+        final Class<?> retType = methodType.returnType();
+        final int paramCount = methodType.parameterCount();
+        final boolean needsScope = DynamicMethodHandle.needsScope(methodType, options);
+
+        MethodHandle target = downcallHandle;
+        if (retType != void.class && retType != MemorySegment.class) {
+            target = MethodHandles.filterReturnValue(target,
+                    ConverterHandles.toJava(registry.getConverterInstance(retType), retType, downcallType.returnType()));
+        }
+        // every filter takes (SegmentAllocator, javaType), collected from the last parameter to keep positions stable
+        for (int i = paramCount - 1; i >= 0; i--) {
+            final Class<?> paramType = methodType.parameterType(i);
+            MethodHandle filter = options.isZeroCopy(i)
+                    ? MethodHandles.dropArguments(PrimitiveArrayConverter.heapSegmentHandle(paramType), 0, SegmentAllocator.class)
+                    : ConverterHandles.toNative(registry.getConverterInstance(paramType), paramType, downcallType.parameterType(i));
+            if (AutoWritable.class.isAssignableFrom(paramType) && options.isCopyIn(i)) {
+                filter = MethodHandles.filterArguments(filter, 1, AUTO_WRITE.asType(MethodType.methodType(paramType, paramType)));
+            }
+            if (!needsScope || options.isPersistent(i)) {
+                filter = MethodHandles.insertArguments(filter, 0, Panama.getNativeAllocator());
+            }
+            target = MethodHandles.collectArguments(target, i, filter);
+        }
+        if (needsScope) {
+            // merge the allocator parameters of the remaining filters into the allocator of the invocation
+            final int[] reorder = new int[target.type().parameterCount()];
+            for (int i = 0, pos = 0; i < paramCount; i++) {
+                if (!options.isPersistent(i)) {
+                    reorder[pos++] = 0;
+                }
+                reorder[pos++] = i + 1;
+            }
+            target = MethodHandles.permuteArguments(target, methodType.insertParameterTypes(0, SegmentAllocator.class), reorder);
+            target = DynamicMethodHandle.inScope(DynamicMethodHandle.readAfterCall(target, methodType, options));
+        } else {
+            target = DynamicMethodHandle.readAfterCall(target, methodType, options);
+        }
+        return new DynamicMethodHandle(null, target.asType(methodType));
+    }
+
+    // structures returned by value are written into the per-thread return buffer instead of a passed allocator
+    private static MethodHandle downcallHandle(MemorySegment segment, FunctionDescriptor functionDescriptor, Linker.Option... options) {
+        final MethodHandle handle = Linker.nativeLinker().downcallHandle(segment, functionDescriptor, options);
+        return functionDescriptor.returnLayout().filter(GroupLayout.class::isInstance).isPresent()
+                ? MethodHandles.insertArguments(handle, 0, ReturnBufferAllocator.INSTANCE) : handle;
+    }
+
+    private static Structure copyResult(Structure result, MemorySegment returned) {
+        Objects.requireNonNull(result, "@Result parameter must not be null").copyFrom(returned);
+        return result;
+    }
+
+    private static boolean isTrivial(MethodType methodType) {
+        final Class<?> retType = methodType.returnType();
+        if (retType != void.class && !retType.isPrimitive() && retType != Pointer.class) {
+            return false;
+        }
+        for (final Class<?> paramType : methodType.parameterArray()) {
+            if (!paramType.isPrimitive() && !Pointer.class.isAssignableFrom(paramType)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static FunctionDescriptor trivialDescriptor(MethodType methodType) {
+        final MemoryLayout[] parameterLayouts = new MemoryLayout[methodType.parameterCount()];
+        for (int i = 0; i < parameterLayouts.length; i++) {
+            parameterLayouts[i] = DynamicMethodHandle.trivialLayout(methodType.parameterType(i));
+        }
+        final Class<?> retType = methodType.returnType();
+        return retType == void.class ? FunctionDescriptor.ofVoid(parameterLayouts)
+                : FunctionDescriptor.of(DynamicMethodHandle.trivialLayout(retType), parameterLayouts);
+    }
+
+    private static MemoryLayout trivialLayout(Class<?> type) {
+        if (type == byte.class) {
+            return ValueLayout.JAVA_BYTE;
+        } else if (type == char.class) {
+            return ValueLayout.JAVA_CHAR;
+        } else if (type == short.class) {
+            return ValueLayout.JAVA_SHORT;
+        } else if (type == int.class) {
+            return ValueLayout.JAVA_INT;
+        } else if (type == long.class) {
+            return ValueLayout.JAVA_LONG;
+        } else if (type == float.class) {
+            return ValueLayout.JAVA_FLOAT;
+        } else if (type == double.class) {
+            return ValueLayout.JAVA_DOUBLE;
+        } else if (type == boolean.class) {
+            return ValueLayout.JAVA_BOOLEAN;
+        }
+        return ValueLayout.ADDRESS;
+    }
+
+    private static MemorySegment segmentOf(Pointer pointer) {
+        return pointer == null ? MemorySegment.NULL : pointer.getSegment();
+    }
+
+    private static boolean isComposable(MethodType methodType, CallOptions options) {
+        for (int i = 0; i < methodType.parameterCount(); i++) {
+            final Class<?> paramType = methodType.parameterType(i);
+            // copied arrays are written back and the converter of abstract types depends on the passed instance
+            if ((paramType.isArray() && !options.isZeroCopy(i)) || paramType == Object.class
+                    || (paramType.isInterface() && !IStructureView.class.isAssignableFrom(paramType) && !CallbackStubs.isCallback(paramType))) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    public static DynamicMethodHandle createAutoConverter(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor) {
-        final MethodHandler methodHandler = new AutoConverterHandler(segment, functionDescriptor, methodType.returnType());
+    // pointers and structures pass existing memory, so only other types may allocate temporaries
+    private static boolean needsScope(MethodType methodType, CallOptions options) {
+        for (int i = 0; i < methodType.parameterCount(); i++) {
+            final Class<?> paramType = methodType.parameterType(i);
+            if (!options.isPersistent(i) && !options.isZeroCopy(i) && !ConversionUtils.isPrimitiveOrBoxedPrimitive(paramType)
+                    && !Pointer.class.isAssignableFrom(paramType) && !IStructure.class.isAssignableFrom(paramType)
+                    && !IStructureView.class.isAssignableFrom(paramType) && paramType != StructArray.class
+                    && !CallbackStubs.isCallback(paramType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // enters a slab scope per call for the leading allocator parameter and exits it once the call completed
+    private static MethodHandle inScope(MethodHandle target) {
+        final Class<?> retType = target.type().returnType();
+        final int offset = retType == void.class ? 1 : 2;
+        MethodHandle cleanup = retType == void.class
+                ? MethodHandles.empty(MethodType.methodType(void.class, Throwable.class))
+                : MethodHandles.dropArguments(MethodHandles.identity(retType), 0, Throwable.class);
+        cleanup = MethodHandles.dropArguments(cleanup, offset, SegmentAllocator.class);
+        cleanup = MethodHandles.foldArguments(cleanup, offset, EXIT_SCOPE);
+        return MethodHandles.foldArguments(MethodHandles.tryFinally(target, cleanup), ENTER_SCOPE);
+    }
+
+    private static SegmentAllocator enterScope() {
+        return SlabSegmentAllocator.local().enter();
+    }
+
+    private static void exitScope(SegmentAllocator allocator) {
+        ((SlabSegmentAllocator) allocator).exit();
+    }
+
+    // reads back all auto readable arguments once the call completed, even if it failed
+    private static MethodHandle readAfterCall(MethodHandle target, MethodType methodType, CallOptions options) {
+        final Class<?> retType = methodType.returnType();
+        // leading parameters of the target, e.g. the allocator, precede the java arguments
+        final int leading = target.type().parameterCount() - methodType.parameterCount();
+        final int offset = (retType == void.class ? 1 : 2) + leading;
+        MethodHandle cleanup = retType == void.class
+                ? MethodHandles.empty(MethodType.methodType(void.class, Throwable.class))
+                : MethodHandles.dropArguments(MethodHandles.identity(retType), 0, Throwable.class);
+        cleanup = MethodHandles.dropArguments(cleanup, offset - leading, target.type().parameterList());
+        boolean readable = false;
+        for (int i = 0; i < methodType.parameterCount(); i++) {
+            final Class<?> paramType = methodType.parameterType(i);
+            if (AutoReadable.class.isAssignableFrom(paramType) && options.isCopyOut(i)) {
+                cleanup = MethodHandles.foldArguments(cleanup, offset + i,
+                        AUTO_READ.asType(MethodType.methodType(void.class, paramType)));
+                readable = true;
+            }
+        }
+        return readable ? MethodHandles.tryFinally(target, cleanup) : target;
+    }
+
+    private static AutoWritable autoWrite(AutoWritable autoWritable) {
+        if (autoWritable != null) {
+            autoWritable.autoWrite(true);
+        }
+        return autoWritable;
+    }
+
+    private static void autoRead(AutoReadable autoReadable) {
+        if (autoReadable != null) {
+            autoReadable.autoRead(false);
+        }
+    }
+
+    public static DynamicMethodHandle createAutoConverter(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor,
+                                                          CallOptions options) {
+        final MethodHandler methodHandler = new AutoConverterHandler(segment, functionDescriptor, methodType.returnType(), options);
         final MethodHandle targetHandle = MethodHandles.insertArguments(MethodHandler.Helper.INVOKE.bindTo(methodHandler), 0, Panama.getNativeAllocator())
                 .asCollector(Object[].class, methodType.parameterCount());
         return new DynamicMethodHandle(methodHandler, targetHandle.asType(methodType));
     }
 
-    public static DynamicMethodHandle createVariadic(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor) {
-        final MethodHandler methodHandler = new VariadicHandler(segment, functionDescriptor, methodType.returnType());
+    public static DynamicMethodHandle createVariadic(MemorySegment segment, MethodType methodType, FunctionDescriptor functionDescriptor,
+                                                     CallOptions options) {
+        final MethodHandler methodHandler = new VariadicHandler(segment, functionDescriptor, methodType.returnType(), options);
         final MethodHandle targetHandle = MethodHandles.insertArguments(MethodHandler.Helper.INVOKE.bindTo(methodHandler)
                 .asCollector(Object[].class, functionDescriptor.argumentLayouts().size() + 1), 0, Panama.getNativeAllocator());
         methodType = methodType.dropParameterTypes(methodType.parameterCount() - 1, methodType.parameterCount())
@@ -138,6 +434,7 @@ public final class DynamicMethodHandle {
             }
         }
 
+        // the allocator is used for arguments which have to outlive the call
         Object invoke(SegmentAllocator allocator, Object[] args);
 
     }
@@ -147,21 +444,36 @@ public final class DynamicMethodHandle {
         protected final MemorySegment segment;
         protected final FunctionDescriptor functionDescriptor;
         protected final Class<?> retType;
+        protected final CallOptions options;
+        // linked once, null if the handler links per shape of the call
+        protected final MethodHandle downcallHandle;
+        private final MethodHandle downcallInvoker;
 
-        protected MethodHandlerBase(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType) {
+        protected MethodHandlerBase(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType, CallOptions options,
+                                    MethodHandle downcallHandle) {
             this.segment = segment;
             this.functionDescriptor = functionDescriptor;
             this.retType = retType;
+            this.options = options;
+            this.downcallHandle = downcallHandle;
+            this.downcallInvoker = downcallHandle == null ? null : MethodHandlerBase.spreadInvoker(downcallHandle);
         }
 
-        protected Object[] transformArgs(SegmentAllocator allocator, Object[] args) {
+        // (Object[])Object view of a downcall handle
+        protected static MethodHandle spreadInvoker(MethodHandle downcallHandle) {
+            return downcallHandle.asType(downcallHandle.type().generic())
+                    .asSpreader(Object[].class, downcallHandle.type().parameterCount());
+        }
+
+        protected Object[] transformArgs(SegmentAllocator allocator, SegmentAllocator temporary, Object[] args) {
             return args;
         }
 
         protected abstract void preProcess(SegmentAllocator allocator, Object[] args);
 
-        protected MethodHandle createHandle(SegmentAllocator allocator, Object[] args) {
-            return Linker.nativeLinker().downcallHandle(this.segment, this.functionDescriptor);
+        // returns a spread invoker, see spreadInvoker
+        protected MethodHandle createHandle(Object[] args, Object[] transformed) {
+            return this.downcallInvoker;
         }
 
         protected abstract void postProcess(Object[] args, Object[] transformed);
@@ -172,35 +484,62 @@ public final class DynamicMethodHandle {
 
         @Override
         public final Object invoke(SegmentAllocator allocator, Object[] args) {
-            final Object[] transformed = this.transformArgs(allocator, args);
-            this.preProcess(allocator, args);
-            final Object retVal;
+            // temporaries of the conversion are released as soon as the call returns
+            final SlabSegmentAllocator temporary = SlabSegmentAllocator.local().enter();
             try {
-                retVal = this.createHandle(allocator, transformed).invokeWithArguments(transformed);
-            } catch (Throwable ex) {
-                throw new NativeException("Failed to invoke native method", ex);
+                final Object[] transformed = this.transformArgs(allocator, temporary, args);
+                this.preProcess(allocator, args);
+                final Object retVal;
+                try {
+                    retVal = (Object) this.createHandle(args, transformed).invokeExact(transformed);
+                } catch (Throwable ex) {
+                    throw new NativeException("Failed to invoke native method", ex);
+                }
+                this.postProcess(args, transformed);
+                return this.processReturn(retVal);
+            } finally {
+                temporary.exit();
             }
-            this.postProcess(args, transformed);
-            return this.processReturn(retVal);
+        }
+
+        protected final SegmentAllocator allocatorFor(int index, SegmentAllocator allocator, SegmentAllocator temporary) {
+            return this.options.isPersistent(index) ? allocator : temporary;
         }
 
     }
 
     private static class AutoConverterHandler extends MethodHandlerBase {
 
-        protected AutoConverterHandler(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType) {
-            super(segment, functionDescriptor, retType);
+        protected AutoConverterHandler(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType, CallOptions options) {
+            this(segment, functionDescriptor, retType, options,
+                    DynamicMethodHandle.downcallHandle(segment, functionDescriptor, options.getLinkerOptions()));
+        }
+
+        protected AutoConverterHandler(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType, CallOptions options,
+                                       MethodHandle downcallHandle) {
+            super(segment, functionDescriptor, retType, options, downcallHandle);
         }
 
         @Override
-        protected Object[] transformArgs(SegmentAllocator allocator, Object[] args) {
-            return ConversionUtils.convertArgs(args);
+        protected Object[] transformArgs(SegmentAllocator allocator, SegmentAllocator temporary, Object[] args) {
+            final Object[] converted = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                if (super.options.isZeroCopy(i)) {
+                    converted[i] = PrimitiveArrayConverter.heapSegment(args[i]);
+                } else if (!super.options.isCopyIn(i) && args[i] != null && args[i].getClass().isArray()) {
+                    // output arrays only need the memory, their content is written by the native side
+                    converted[i] = PrimitiveArrayConverter.allocate(args[i], super.allocatorFor(i, allocator, temporary));
+                } else {
+                    converted[i] = ConversionUtils.convertArg(args[i], super.allocatorFor(i, allocator, temporary));
+                }
+            }
+            return converted;
         }
 
         @Override
         public void preProcess(SegmentAllocator allocator, Object[] args) {
-            for (final Object arg : args) {
-                if (arg instanceof AutoWritable autoWritable) {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] instanceof AutoWritable autoWritable && super.options.isCopyIn(this.optionIndex(i))) {
                     autoWritable.autoWrite(true);
                 }
             }
@@ -210,31 +549,29 @@ public final class DynamicMethodHandle {
         public void postProcess(Object[] args, Object[] transformed) {
             for (int i = 0; i < args.length; i++) {
                 final Object arg = args[i];
+                final int optionIndex = this.optionIndex(i);
+                if (!super.options.isCopyOut(optionIndex)) {
+                    continue;
+                }
                 if (arg instanceof AutoReadable autoReadable) {
                     autoReadable.autoRead(false);
                 }
-                // this is peak ugly and needs an architecture rewrite
-                // copying from off-heap to on-heap is necessary though
-                if (arg.getClass().isArray()) {
-                    final ValueLayout layout = (ValueLayout) ConversionUtils.createMemoryLayout(arg.getClass().getComponentType());
-                    try {
-                        final Method toArray = MemorySegment.class.getMethod("toArray", layout.getClass().getInterfaces()[0]);
-                        final Object array = toArray.invoke(transformed[i], layout);
-                        for (int j = 0; j < Array.getLength(arg); j++) {
-                            Array.set(arg, j, Array.get(array, j));
-                        }
-                    } catch (ReflectiveOperationException ex) {
-                        throw new NativeException("Failed to auto write to array ", ex);
-                    }
-
+                // native code worked on zero-copy arrays directly, all others are copied back in bulk
+                if (arg != null && arg.getClass().isArray() && !super.options.isZeroCopy(optionIndex)) {
+                    PrimitiveArrayConverter.copyBack((MemorySegment) transformed[i], arg);
                 }
             }
         }
 
+        // index of the parameter whose options apply to the given argument
+        protected int optionIndex(int argIndex) {
+            return argIndex;
+        }
+
         @Override
         protected Object processReturn(Object retVal) {
-            if (retVal == null) {
-                return null;
+            if (retVal == null || this.retType == MemorySegment.class) {
+                return retVal;
             }
             return ConversionUtils.convertReturnValue(this.retType, retVal);
         }
@@ -243,58 +580,110 @@ public final class DynamicMethodHandle {
 
     private static final class VariadicHandler extends AutoConverterHandler {
 
-        private FunctionDescriptor fullDescriptor;
+        // shapes linked per function, beyond that an arbitrary shape is dropped for every new one
+        private static final int MAX_SHAPES = 64;
+        private static final ClassValue<MemoryLayout> PROMOTED_LAYOUTS = new ClassValue<>() {
+            @Override
+            protected MemoryLayout computeValue(Class<?> type) {
+                if (!ConversionUtils.isTypeSupported(type)) {
+                    throw new NativeException("Parameter type " + type.getCanonicalName() + " is unsupported");
+                }
+                return VariadicHandler.promote(ConversionUtils.createMemoryLayout(type));
+            }
+        };
 
-        public VariadicHandler(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType) {
-            super(segment, functionDescriptor, retType);
+        // linked spread invokers keyed by the promoted layouts of the varargs, e.g. Short and Integer share a shape
+        private final Map<List<MemoryLayout>, MethodHandle> shapes;
+
+        public VariadicHandler(MemorySegment segment, FunctionDescriptor functionDescriptor, Class<?> retType, CallOptions options) {
+            // the full descriptor depends on the passed varargs, so linking happens per shape
+            super(segment, functionDescriptor, retType, options, null);
+            this.shapes = new ConcurrentHashMap<>();
         }
 
         @Override
-        protected Object[] transformArgs(SegmentAllocator allocator, Object[] args) {
-            // TODO this can be done more efficiently
-            this.fullDescriptor = super.functionDescriptor;
-            final Object[] varargs = (Object[]) args[args.length - 1];
-            final Object[] fullArgs = new Object[args.length - 1 + varargs.length];
-            System.arraycopy(args, 0, fullArgs, 0, args.length - 1);
-            final Object[] convertedArgs = super.transformArgs(allocator, fullArgs);
-
+        protected Object[] transformArgs(SegmentAllocator allocator, SegmentAllocator temporary, Object[] args) {
+            final int fixedCount = args.length - 1;
+            final Object[] varargs = (Object[]) args[fixedCount];
+            final Object[] fullArgs = new Object[fixedCount + varargs.length];
+            System.arraycopy(super.transformArgs(allocator, temporary, Arrays.copyOf(args, fixedCount)), 0, fullArgs, 0, fixedCount);
             for (int i = 0; i < varargs.length; i++) {
-                final Object vararg = varargs[i];
-                final Class<?> varargType = vararg.getClass();
-                if (!ConversionUtils.isTypeSupported(varargType)) {
-                    throw new NativeException("Parameter type " + varargType.getCanonicalName() + " is unsupported");
-                }
-                MemoryLayout layout = ConversionUtils.createMemoryLayout(varargType);
-                // primitive type promotion is necessary
-                if (layout instanceof ValueLayout valueLayout) {
-                    final Class<?> carrier = valueLayout.carrier();
-                    if (carrier == byte.class || carrier == char.class || carrier == short.class || carrier == int.class) {
-                        layout = ValueLayout.JAVA_LONG;
-                    } else if (carrier == float.class) {
-                        layout = ValueLayout.JAVA_DOUBLE;
-                    }
-                }
-                this.fullDescriptor = this.fullDescriptor.appendArgumentLayouts(layout);
-                varargs[i] = ConversionUtils.convertArg(vararg);
+                // null is passed as the null pointer, booleans are promoted to int like in C
+                final Object converted = varargs[i] == null ? MemorySegment.NULL
+                        : ConversionUtils.convertArg(varargs[i], super.allocatorFor(fixedCount, allocator, temporary));
+                fullArgs[fixedCount + i] = converted instanceof Boolean bool ? (bool ? 1 : 0) : converted;
             }
-            System.arraycopy(convertedArgs, 0, fullArgs, 0, convertedArgs.length);
-            System.arraycopy(varargs, 0, fullArgs, args.length - 1, varargs.length);
             return fullArgs;
         }
 
         @Override
-        protected MethodHandle createHandle(SegmentAllocator allocator, Object[] args) {
-            return Linker.nativeLinker().downcallHandle(super.segment, this.fullDescriptor);
+        protected MethodHandle createHandle(Object[] args, Object[] transformed) {
+            final Object[] varargs = (Object[]) args[args.length - 1];
+            final MemoryLayout[] layouts = new MemoryLayout[varargs.length];
+            for (int i = 0; i < varargs.length; i++) {
+                layouts[i] = varargs[i] == null ? ValueLayout.ADDRESS : PROMOTED_LAYOUTS.get(varargs[i].getClass());
+            }
+            final List<MemoryLayout> shape = List.of(layouts);
+            final MethodHandle cached = this.shapes.get(shape);
+            if (cached != null) {
+                return cached;
+            }
+            // linked outside of the map, a concurrent call with the same shape may link it as well
+            final MethodHandle linked = this.link(layouts);
+            if (this.shapes.size() >= MAX_SHAPES) {
+                final Iterator<List<MemoryLayout>> iterator = this.shapes.keySet().iterator();
+                if (iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            final MethodHandle existing = this.shapes.putIfAbsent(shape, linked);
+            return existing != null ? existing : linked;
         }
 
+        private MethodHandle link(MemoryLayout[] layouts) {
+            final FunctionDescriptor fullDescriptor = super.functionDescriptor.appendArgumentLayouts(layouts);
+            final Linker.Option firstVariadicArg = Linker.Option.firstVariadicArg(super.functionDescriptor.argumentLayouts().size());
+            return MethodHandlerBase.spreadInvoker(DynamicMethodHandle.downcallHandle(super.segment, fullDescriptor, firstVariadicArg));
+        }
+
+        // default argument promotions of C
+        private static MemoryLayout promote(MemoryLayout layout) {
+            if (layout instanceof ValueLayout valueLayout) {
+                final Class<?> carrier = valueLayout.carrier();
+                if (carrier == boolean.class || carrier == byte.class || carrier == char.class || carrier == short.class) {
+                    return ValueLayout.JAVA_INT;
+                } else if (carrier == float.class) {
+                    return ValueLayout.JAVA_DOUBLE;
+                }
+            }
+            return layout;
+        }
+
+        // structures and arrays among the varargs are written and read back like the fixed arguments
         @Override
         public void preProcess(SegmentAllocator allocator, Object[] args) {
-            //TODO the base implementation still has the non-flattened vararg Object[] inside args
+            super.preProcess(allocator, VariadicHandler.flatten(args));
         }
 
         @Override
         public void postProcess(Object[] args, Object[] transformed) {
-            //TODO the base implementation still has the non-flattened vararg Object[] inside args
+            super.postProcess(VariadicHandler.flatten(args), transformed);
+        }
+
+        // the varargs share the options of the vararg parameter
+        @Override
+        protected int optionIndex(int argIndex) {
+            return Math.min(argIndex, super.functionDescriptor.argumentLayouts().size());
+        }
+
+        // the fixed arguments followed by the varargs, aligned with the transformed arguments
+        private static Object[] flatten(Object[] args) {
+            final int fixedCount = args.length - 1;
+            final Object[] varargs = (Object[]) args[fixedCount];
+            final Object[] flattened = Arrays.copyOf(args, fixedCount + varargs.length);
+            System.arraycopy(varargs, 0, flattened, fixedCount, varargs.length);
+            return flattened;
         }
 
     }
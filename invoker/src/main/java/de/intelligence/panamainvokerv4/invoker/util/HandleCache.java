@@ -0,0 +1,134 @@
+package de.intelligence.panamainvokerv4.invoker.util;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.lang.invoke.MethodType;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of linked handles keyed by function address, scope and signature. Reads are lock-free and only
+ * write striped counters and, once per epoch, the entry itself. Once the bound is exceeded the least recently used
+ * tenth of the entries is evicted, recency is tracked in epochs which advance with every miss. The scope is part of
+ * the key because a library which is closed and opened again can be mapped at the same address.
+ */
+public final class HandleCache {
+
+    public static final String MAX_SIZE_PROPERTY = "panama.handleCache.maxSize";
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final Map<Key, Entry> entries;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private volatile int maxSize;
+    // coarse clock, advanced by misses only
+    private volatile int epoch;
+
+    public HandleCache(int maxSize) {
+        this.entries = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.setMaxSize(maxSize);
+    }
+
+    public DynamicMethodHandle computeIfAbsent(MemorySegment function, MethodType methodType, boolean varArgs, CallOptions options,
+                                               Supplier<DynamicMethodHandle> handleSupplier) {
+        final Key key = new Key(function.address(), function.scope(), methodType, varArgs, options);
+        final Entry entry = this.entries.get(key);
+        if (entry != null) {
+            this.hits.increment();
+            // hits only write once per epoch, so hot entries are not written by every call
+            final int epoch = this.epoch;
+            if (entry.lastAccess != epoch) {
+                entry.lastAccess = epoch;
+            }
+            return entry.handle;
+        }
+        // linked outside of the map, concurrent misses for the same key may link twice but keep the first handle
+        this.misses.increment();
+        final Entry linked = new Entry(handleSupplier.get());
+        final Entry existing = this.entries.putIfAbsent(key, linked);
+        if (existing != null) {
+            return existing.handle;
+        }
+        // misses are rare, each one starts a new epoch, lost increments only make the order less exact
+        linked.lastAccess = ++this.epoch;
+        if (this.entries.size() > this.maxSize) {
+            this.evict();
+        }
+        return linked.handle;
+    }
+
+    public void setMaxSize(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+        if (this.entries.size() > maxSize) {
+            this.evict();
+        }
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    // drops the handles of functions in the scope, called before a library is closed
+    public void invalidate(SegmentScope scope) {
+        this.entries.keySet().removeIf(k -> k.scope.equals(scope));
+    }
+
+    public void clear() {
+        this.entries.clear();
+    }
+
+    public Stats getStats() {
+        return new Stats(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.entries.size());
+    }
+
+    private synchronized void evict() {
+        final int size = this.entries.size();
+        if (size <= this.maxSize) {
+            return;
+        }
+        final int toEvict = size - this.maxSize + this.maxSize / 10;
+        final List<Map.Entry<Key, Entry>> oldest = this.entries.entrySet().stream()
+                .sorted(Comparator.comparingInt(e -> e.getValue().lastAccess))
+                .limit(toEvict)
+                .toList();
+        for (final Map.Entry<Key, Entry> entry : oldest) {
+            if (this.entries.remove(entry.getKey(), entry.getValue())) {
+                this.evictions.increment();
+            }
+        }
+    }
+
+    static int getConfiguredMaxSize() {
+        return Integer.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size) {
+    }
+
+    private record Key(long address, SegmentScope scope, MethodType methodType, boolean varArgs, CallOptions options) {
+    }
+
+    private static final class Entry {
+
+        private final DynamicMethodHandle handle;
+        // plain field, a stale value only makes the LRU order less exact
+        private int lastAccess;
+
+        private Entry(DynamicMethodHandle handle) {
+            this.handle = handle;
+        }
+
+    }
+
+}
@@ -0,0 +1,52 @@
+package de.intelligence.panamainvokerv4.invoker.util;
+
+import java.lang.foreign.Linker;
+import java.lang.reflect.Method;
+import java.util.Optional;
+
+/**
+ * Detects linker options which were added after the FFM version this library is compiled against. The artifact is
+ * compiled as a java 20 preview, which only loads on java 20, so none of these options resolve on the supported
+ * runtime and both lookups return empty there.
+ */
+public final class LinkerOptions {
+
+    private static final Linker.Option CRITICAL;
+    private static final Linker.Option CRITICAL_HEAP_ACCESS;
+
+    static {
+        CRITICAL = LinkerOptions.findCriticalOption();
+        // Linker.Option.critical(true) since java 22
+        CRITICAL_HEAP_ACCESS = LinkerOptions.invokeFactory("critical", boolean.class, true).orElse(null);
+    }
+
+    private LinkerOptions() {
+    }
+
+    // option to skip the thread state transition, always empty on java 20
+    public static Optional<Linker.Option> critical() {
+        return Optional.ofNullable(CRITICAL);
+    }
+
+    // option which additionally allows heap segments as arguments, always empty on java 20
+    public static Optional<Linker.Option> criticalHeapAccess() {
+        return Optional.ofNullable(CRITICAL_HEAP_ACCESS);
+    }
+
+    private static Linker.Option findCriticalOption() {
+        // Linker.Option.critical(boolean) since java 22, Linker.Option.isTrivial() in java 21
+        final Optional<Linker.Option> critical = LinkerOptions.invokeFactory("critical", boolean.class, false);
+        return critical.or(() -> LinkerOptions.invokeFactory("isTrivial", null, null)).orElse(null);
+    }
+
+    private static Optional<Linker.Option> invokeFactory(String name, Class<?> parameterType, Object argument) {
+        try {
+            final Method factory = parameterType == null ? Linker.Option.class.getMethod(name)
+                    : Linker.Option.class.getMethod(name, parameterType);
+            return Optional.of((Linker.Option) (parameterType == null ? factory.invoke(null) : factory.invoke(null, argument)));
+        } catch (ReflectiveOperationException | ClassCastException ex) {
+            return Optional.empty();
+        }
+    }
+
+}
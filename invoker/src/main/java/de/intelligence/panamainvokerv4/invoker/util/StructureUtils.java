@@ -1,17 +1,26 @@
 package de.intelligence.panamainvokerv4.invoker.util;
 
+import java.lang.foreign.GroupLayout;
 import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import de.intelligence.panamainvokerv4.invoker.Panama;
 import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.reflection.GeneratedBindings;
+import de.intelligence.panamainvokerv4.invoker.reflection.StructureAccessors;
 import de.intelligence.panamainvokerv4.invoker.type.IStructure;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureAccessor;
 import de.intelligence.panamainvokerv4.invoker.type.Structure;
 
 public final class StructureUtils {
@@ -27,24 +36,57 @@ public final class StructureUtils {
     }
 
     public static Structure.StructureInfo createStructInfo(Class<? extends IStructure> structClass) {
+        // 0. prefer accessors generated at compile time
+        final Optional<IStructureAccessor<IStructure>> accessor = GeneratedBindings.getStructureAccessor(structClass);
+        if (accessor.isPresent()) {
+            final StructLayout layout = accessor.get().getLayout();
+            return new Structure.StructureInfo(layout, Map.of(), accessor.get(), StructureUtils.createSlices(layout, Map.of()));
+        }
         // 1. calculate memory layout
-        final StructLayout layout = ConversionUtils.convertStruct(structClass);
+        final GroupLayout layout = ConversionUtils.convertStruct(structClass);
         // 2. create var handles
         final Map<Field, Structure.FieldInfo> fieldInfos = new HashMap<>();
         Arrays.stream(structClass.getDeclaredFields())
                 .forEach(f -> {
                     try {
                         f.setAccessible(true);
-                        final Structure.FieldInfo fieldInfo = new Structure.FieldInfo(f,
-                                layout.varHandle(MemoryLayout.PathElement.groupElement(f.getName())),
-                                MethodHandles.privateLookupIn(structClass, MethodHandles.lookup())
-                                        .unreflectVarHandle(f), Panama.getNewConverters().getConverterInstance(f.getType()));
+                        final MemoryLayout.PathElement path = MemoryLayout.PathElement.groupElement(f.getName());
+                        final MemoryLayout fieldLayout = layout.select(path);
+                        final VarHandle javaHandle = MethodHandles.privateLookupIn(structClass, MethodHandles.lookup()).unreflectVarHandle(f);
+                        // embedded members are copied as a whole
+                        final Structure.FieldInfo fieldInfo = fieldLayout instanceof ValueLayout
+                                ? new Structure.FieldInfo(f, layout.varHandle(path), javaHandle,
+                                Panama.getNewConverters().getConverterInstance(f.getType()), layout.byteOffset(path), fieldLayout)
+                                : new Structure.FieldInfo(f, null, javaHandle, null, layout.byteOffset(path), fieldLayout);
                         fieldInfos.put(f, fieldInfo);
                     } catch (IllegalAccessException ex) {
                         throw new NativeException("Failed to get var handle for field: " + f, ex);
                     }
                 });
-        return new Structure.StructureInfo(layout, fieldInfos);
+        // 3. generate straight-line accessors, the field infos remain the fallback, unions only transfer their active member
+        final IStructureAccessor<IStructure> generated = layout instanceof StructLayout structLayout
+                ? StructureAccessors.generate(structClass, structLayout, fieldInfos).orElse(null) : null;
+        return new Structure.StructureInfo(layout, fieldInfos, generated, StructureUtils.createSlices(layout, fieldInfos));
+    }
+
+    // byte ranges of the named members, used to synchronize single fields, unions are synchronized as a whole
+    private static List<Structure.FieldSlice> createSlices(GroupLayout layout, Map<Field, Structure.FieldInfo> fieldInfos) {
+        if (!(layout instanceof StructLayout)) {
+            return List.of(new Structure.FieldSlice(null, 0, layout.byteSize(), null));
+        }
+        final List<Structure.FieldSlice> slices = new ArrayList<>();
+        for (final MemoryLayout member : layout.memberLayouts()) {
+            if (member.name().isEmpty()) {
+                continue;
+            }
+            final String name = member.name().get();
+            final Structure.FieldInfo fieldInfo = fieldInfos.values().stream()
+                    .filter(f -> f.field().getName().equals(name))
+                    .findFirst()
+                    .orElse(null);
+            slices.add(new Structure.FieldSlice(name, layout.byteOffset(MemoryLayout.PathElement.groupElement(name)), member.byteSize(), fieldInfo));
+        }
+        return List.copyOf(slices);
     }
 
 }
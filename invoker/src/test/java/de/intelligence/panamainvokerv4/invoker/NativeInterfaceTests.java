@@ -1,18 +1,44 @@
 package de.intelligence.panamainvokerv4.invoker;
 
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
 import java.lang.foreign.SegmentAllocator;
 import java.lang.foreign.SegmentScope;
+import java.lang.foreign.ValueLayout;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
 
+import de.intelligence.panamainvokerv4.invoker.annotation.Callback;
+import de.intelligence.panamainvokerv4.invoker.annotation.Critical;
 import de.intelligence.panamainvokerv4.invoker.annotation.FieldOrder;
+import de.intelligence.panamainvokerv4.invoker.annotation.FixedLength;
+import de.intelligence.panamainvokerv4.invoker.annotation.In;
 import de.intelligence.panamainvokerv4.invoker.annotation.NativeInterface;
 import de.intelligence.panamainvokerv4.invoker.annotation.NativeStruct;
+import de.intelligence.panamainvokerv4.invoker.annotation.Out;
+import de.intelligence.panamainvokerv4.invoker.annotation.Result;
+import de.intelligence.panamainvokerv4.invoker.annotation.ZeroCopy;
 import de.intelligence.panamainvokerv4.invoker.exception.NativeException;
+import de.intelligence.panamainvokerv4.invoker.library.LibraryRegistry;
+import de.intelligence.panamainvokerv4.invoker.library.NativeFunction;
+import de.intelligence.panamainvokerv4.invoker.type.IStructureView;
 import de.intelligence.panamainvokerv4.invoker.type.IntegralType;
 import de.intelligence.panamainvokerv4.invoker.type.Pointer;
+import de.intelligence.panamainvokerv4.invoker.type.StructArray;
 import de.intelligence.panamainvokerv4.invoker.type.Structure;
+import de.intelligence.panamainvokerv4.invoker.type.StructurePool;
+import de.intelligence.panamainvokerv4.invoker.type.Union;
+import de.intelligence.panamainvokerv4.invoker.util.CallbackStubs;
+import de.intelligence.panamainvokerv4.invoker.util.LinkerOptions;
 import de.intelligence.panamainvokerv4.invoker.update.UpdatePolicy;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -26,17 +52,105 @@ class NativeInterfaceTests {
     interface TestInvalidInterface {
     }
 
+    @NativeInterface("c")
+    interface TestInvalidDirection {
+
+        int abs(@Out int value);
+
+    }
+
+    @Callback
+    interface IntComparator {
+
+        int compare(Pointer a, Pointer b);
+
+    }
+
+    @Callback
+    interface StringSupplier {
+
+        String get();
+
+    }
+
+    @FunctionalInterface
+    interface IntUnaryFunction {
+
+        int apply(int value);
+
+    }
+
+    @FunctionalInterface
+    interface LongUnaryFunction {
+
+        long apply(long value);
+
+    }
+
+    @FunctionalInterface
+    interface StringLength {
+
+        long length(String s);
+
+    }
+
+    @FunctionalInterface
+    interface PointerConsumer {
+
+        void accept(Pointer pointer);
+
+    }
+
     @NativeInterface("c")
     interface TestStdlib {
 
+        void qsort(int[] base, long count, long size, IntComparator comparator);
+
         void memcpy(int[] dest, int[] src, int len);
 
+        void memmove(@Out int[] dest, @In int[] src, int len);
+
+        @ZeroCopy
+        void memcpy(byte[] dest, byte[] src, int len);
+
         int puts(String s);
 
         int puts(Pointer p);
 
         int printf(String format, Object... args);
 
+        int snprintf(Pointer buffer, long size, String format, Object... args);
+
+        int sscanf(String input, String format, Object... args);
+
+        @Critical
+        int abs(int value);
+
+        void memset(StructArray<Point> array, int value, long size);
+
+        DivResult div(int numerator, int denominator);
+
+        DivResult div(@Result DivResult result, int numerator, int denominator);
+
+        Tm gmtime(Pointer time);
+
+    }
+
+    // opened through its own arena, unlike the default lookup
+    @NativeInterface("libm.so.6")
+    interface TestLibm {
+
+        double cos(double value);
+
+    }
+
+    @NativeInterface(value = "c", lazy = true)
+    interface TestLazyStdlib {
+
+        int puts(String s);
+
+        int missingFunction();
+
     }
 
     @NativeStruct
@@ -50,6 +164,94 @@ class NativeInterfaceTests {
 
     }
 
+    @NativeStruct
+    @Structure.ByValue
+    static class DivResult extends Structure {
+
+        @FieldOrder(0)
+        int quot;
+        @FieldOrder(1)
+        int rem;
+
+    }
+
+    // leading members of struct tm, the rest is not read
+    @NativeStruct
+    @Structure.ByReference
+    static class Tm extends Structure {
+
+        @FieldOrder(0)
+        int sec;
+        @FieldOrder(1)
+        int min;
+        @FieldOrder(2)
+        int hour;
+        @FieldOrder(3)
+        int mday;
+        @FieldOrder(4)
+        int mon;
+        @FieldOrder(5)
+        int year;
+        @FieldOrder(6)
+        int wday;
+        @FieldOrder(7)
+        int yday;
+        @FieldOrder(8)
+        int isdst;
+
+    }
+
+    @NativeStruct
+    static class Shape extends Structure {
+
+        @FieldOrder(0)
+        byte kind;
+        @FieldOrder(1)
+        Point origin;
+        @FieldOrder(2)
+        @FixedLength(4)
+        int[] data;
+
+    }
+
+    // pointers are copied by the generated accessor, boxed fields go through their converter
+    @NativeStruct
+    static class Node extends Structure {
+
+        @FieldOrder(0)
+        Pointer next;
+        @FieldOrder(1)
+        Integer count;
+        @FieldOrder(2)
+        long id;
+
+    }
+
+    @NativeStruct
+    static class IntOrDouble extends Union {
+
+        @FieldOrder(0)
+        int i;
+        @FieldOrder(1)
+        double d;
+
+    }
+
+    @NativeStruct
+    interface PointView extends IStructureView {
+
+        @FieldOrder(0)
+        int getX();
+
+        void setX(int x);
+
+        @FieldOrder(1)
+        int getY();
+
+        void setY(int y);
+
+    }
+
     @NativeInterface("User32")
     interface TestUser32 {
 
@@ -68,6 +270,8 @@ class NativeInterfaceTests {
     void testInvalidInterface() {
         assertThrows(IllegalArgumentException.class, () -> Panama.load(TestInvalidLibrary.class));
         assertThrows(NativeException.class, () -> Panama.load(TestInvalidInterface.class));
+        // primitives are passed by value, they have no direction
+        assertThrows(NativeException.class, () -> Panama.load(TestInvalidDirection.class));
     }
 
     @Test
@@ -75,6 +279,54 @@ class NativeInterfaceTests {
         assertThrows(NativeException.class, Panama::load);
     }
 
+    @Test
+    void testGeneratedImplementation() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+
+        assertFalse(Proxy.isProxyClass(stdlib.getClass()));
+        assertTrue(stdlib.getClass().isHidden());
+        assertEquals(TestStdlib.class.getCanonicalName() + "$PanamaProxy", stdlib.toString());
+        assertTrue(stdlib.puts("Generated implementation") >= 0);
+    }
+
+    @Test
+    void testLazyBinding() {
+        final TestLazyStdlib stdlib = Panama.load(TestLazyStdlib.class);
+
+        assertTrue(stdlib.puts("Lazy binding") >= 0);
+        assertThrows(NativeException.class, stdlib::missingFunction);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void testSharedImplementation() {
+        final TestLibm libm = Panama.load(TestLibm.class);
+        assertSame(libm, Panama.load(TestLibm.class));
+
+        // the other load still uses the implementation and its library
+        Panama.unload(TestLibm.class);
+        assertTrue(LibraryRegistry.isLoaded("libm.so.6"));
+        assertEquals(1.0, libm.cos(0.0));
+
+        Panama.unload(TestLibm.class);
+        assertFalse(LibraryRegistry.isLoaded("libm.so.6"));
+        assertNotSame(libm, Panama.load(TestLibm.class));
+        Panama.unload(TestLibm.class);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void testReloadLibrary() {
+        assertEquals(1.0, Panama.load(TestLibm.class).cos(0.0));
+
+        Panama.unload(TestLibm.class);
+        assertFalse(LibraryRegistry.isLoaded("libm.so.6"));
+
+        // libm stays mapped by the JVM, so the reopened library has the same addresses
+        assertEquals(1.0, Panama.load(TestLibm.class).cos(0.0));
+        Panama.unload(TestLibm.class);
+    }
+
     @Test
     void testArrayTypes() {
         final TestStdlib stdlib = Panama.load(TestStdlib.class);
@@ -87,6 +339,35 @@ class NativeInterfaceTests {
         assertArrayEquals(src, dest);
     }
 
+    @Test
+    void testArrayDirections() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+
+        final int[] src = {1, 2, 3};
+        final int[] dest = new int[src.length];
+
+        // only the destination is copied back
+        stdlib.memmove(dest, src, src.length * 4);
+
+        assertArrayEquals(src, dest);
+    }
+
+    @Test
+    void testZeroCopyArrays() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+
+        // the java 20 linker cannot pass heap segments, the annotated arrays are copied like all others
+        if (Runtime.version().feature() == 20) {
+            assertTrue(LinkerOptions.criticalHeapAccess().isEmpty());
+        }
+        final byte[] src = {1, 2, 3, 4};
+        final byte[] dest = new byte[src.length];
+
+        stdlib.memcpy(dest, src, src.length);
+
+        assertArrayEquals(src, dest);
+    }
+
     @Test
     void testStringAndPointerConversion() {
         final TestStdlib stdlib = Panama.load(TestStdlib.class);
@@ -97,6 +378,17 @@ class NativeInterfaceTests {
         assertTrue(stdlib.puts(ptr) >= 0);
     }
 
+    @Test
+    void testCriticalFunction() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+
+        assertEquals(42, stdlib.abs(-42));
+        // the java 20 linker has no critical option, the annotation has no effect there
+        if (Runtime.version().feature() == 20) {
+            assertTrue(LinkerOptions.critical().isEmpty());
+        }
+    }
+
     @Test
     void testVarargs() {
         final TestStdlib stdlib = Panama.load(TestStdlib.class);
@@ -104,6 +396,55 @@ class NativeInterfaceTests {
         assertEquals(10, stdlib.printf("Test %d, %s", new IntegralType(42), "T"));
     }
 
+    @Test
+    void testVarargsPromoteAndReadBack() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+        final MemorySegment buffer = MemorySegment.allocateNative(64, SegmentScope.auto());
+
+        // booleans are promoted to int
+        stdlib.snprintf(new Pointer(buffer), buffer.byteSize(), "%d %d", true, false);
+        assertEquals("1 0", buffer.getUtf8String(0));
+
+        // structures and arrays among the varargs are read back after the call
+        final Point point = new Point();
+        final int[] values = new int[1];
+        assertEquals(2, stdlib.sscanf("4 7", "%d %d", point, values));
+        assertEquals(4, point.x);
+        assertEquals(7, values[0]);
+    }
+
+    @Test
+    void testVarargShapesConcurrently() throws Exception {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+        // Short and Float share the promoted shapes of Integer and Double, null is passed as the null pointer
+        final String[] formats = {"%d", "%d", "%lld", "%.1f", "%.1f", "%s", "%p"};
+        final Object[] values = {42, (short) 42, 42L, 4.5, 4.5f, "s", null};
+        final String[] expected = {"42", "42", "42", "4.5", "4.5", "s", null};
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int offset = t;
+                futures.add(executor.submit(() -> {
+                    final MemorySegment buffer = MemorySegment.allocateNative(64, SegmentScope.auto());
+                    for (int i = 0; i < 500; i++) {
+                        final int shape = (offset + i) % formats.length;
+                        assertTrue(stdlib.snprintf(new Pointer(buffer), buffer.byteSize(), formats[shape], values[shape]) > 0);
+                        if (expected[shape] != null) {
+                            assertEquals(expected[shape], buffer.getUtf8String(0));
+                        }
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testStruct() {
         final TestUser32 user32 = Panama.load(TestUser32.class);
@@ -118,4 +459,250 @@ class NativeInterfaceTests {
         assertNotEquals(Integer.MAX_VALUE, point.y);
     }
 
+    @Test
+    void testDirtyStruct() {
+        final Point point = new Point();
+        point.setReadPolicy(UpdatePolicy.DIRTY);
+        point.setWritePolicy(UpdatePolicy.DIRTY);
+
+        // only marked fields are written
+        point.x = 1;
+        point.y = 5;
+        point.markDirty("x");
+        point.autoWrite(false);
+        assertEquals(1, point.segment().get(ValueLayout.JAVA_INT, 0));
+        assertEquals(0, point.segment().get(ValueLayout.JAVA_INT, 4));
+        assertFalse(point.isDirty());
+
+        // pending java changes of marked fields survive a read
+        point.x = 2;
+        point.markDirty("x");
+        point.segment().set(ValueLayout.JAVA_INT, 4, 3);
+        point.autoRead(false);
+        assertEquals(2, point.x);
+        assertEquals(3, point.y);
+        assertThrows(NativeException.class, () -> point.markDirty("z"));
+
+        // unions are synchronized as a whole, but only their own fields can be marked
+        final IntOrDouble union = new IntOrDouble();
+        union.setReadPolicy(UpdatePolicy.DIRTY);
+        union.i = 4;
+        union.markDirty("i");
+        union.segment().set(ValueLayout.JAVA_INT, 0, 5);
+        union.autoRead(false);
+        assertEquals(4, union.i);
+        assertThrows(NativeException.class, () -> union.markDirty("z"));
+    }
+
+    @Test
+    void testShadowStruct() {
+        final Point point = new Point();
+        point.setReadPolicy(UpdatePolicy.SHADOW);
+        point.setWritePolicy(UpdatePolicy.SHADOW);
+
+        point.x = 1;
+        point.autoWrite(false);
+        assertEquals(1, point.segment().get(ValueLayout.JAVA_INT, 0));
+
+        // only the field changed on the native side is decoded, pending java changes are kept
+        point.x = 2;
+        point.segment().set(ValueLayout.JAVA_INT, 4, 3);
+        point.autoRead(false);
+        assertEquals(2, point.x);
+        assertEquals(3, point.y);
+    }
+
+    @Test
+    void testStructureView() {
+        final PointView point = IStructureView.allocate(PointView.class, this.allocator);
+        assertEquals(8, point.segment().byteSize());
+
+        point.setX(1);
+        point.segment().set(ValueLayout.JAVA_INT, 4, 2);
+        assertEquals(1, point.segment().get(ValueLayout.JAVA_INT, 0));
+        assertEquals(2, point.getY());
+        assertEquals(point.address(), IStructureView.of(PointView.class, point.segment()).address());
+    }
+
+    @Test
+    void testStructArray() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+        final StructArray<Point> array = new StructArray<>(Point.class, 3, this.allocator);
+        final Point[] points = {new Point(), new Point(), new Point()};
+        for (int i = 0; i < points.length; i++) {
+            points[i].x = i;
+            points[i].y = -i;
+        }
+        array.writeAll(points);
+        assertEquals(2, array.segment().get(ValueLayout.JAVA_INT, 16));
+
+        final Point cursor = array.at(1, array.cursor());
+        cursor.read();
+        assertEquals(-1, cursor.y);
+        cursor.x = 7;
+        cursor.write();
+        assertEquals(7, array.segment().get(ValueLayout.JAVA_INT, 8));
+
+        stdlib.memset(array, 0, array.segment().byteSize());
+        array.readAll(points);
+        assertEquals(0, points[2].x);
+    }
+
+    @Test
+    void testStructReturnedByValue() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+
+        final DivResult result = stdlib.div(7, 2);
+        assertEquals(3, result.quot);
+        assertEquals(1, result.rem);
+
+        // the passed structure is filled and returned instead of a new one
+        final DivResult reused = new DivResult();
+        assertSame(reused, stdlib.div(reused, 9, 4));
+        assertEquals(2, reused.quot);
+        assertEquals(1, reused.rem);
+    }
+
+    @Test
+    void testStructReturnedByReference() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+        final MemorySegment time = MemorySegment.allocateNative(ValueLayout.JAVA_LONG, SegmentScope.auto());
+        time.set(ValueLayout.JAVA_LONG, 0, 0L);
+
+        final Tm tm = stdlib.gmtime(new Pointer(time));
+        assertNotNull(tm);
+        assertEquals(70, tm.year);
+        assertEquals(0, tm.mon);
+        assertEquals(1, tm.mday);
+        assertEquals(4, tm.wday);
+    }
+
+    @Test
+    void testUnion() {
+        final IntOrDouble union = new IntOrDouble();
+        assertEquals(8, union.segment().byteSize());
+
+        union.setActiveMember("d");
+        union.d = 1.5;
+        union.i = 3;
+        union.write();
+        assertEquals(1.5, union.segment().get(ValueLayout.JAVA_DOUBLE, 0));
+
+        // only the active member is decoded
+        union.setActiveMember("i");
+        union.segment().set(ValueLayout.JAVA_INT, 0, 7);
+        union.read();
+        assertEquals(7, union.i);
+        assertEquals(1.5, union.d);
+    }
+
+    @Test
+    void testNestedStruct() {
+        final Shape shape = new Shape();
+        // kind is padded to the alignment of the embedded point
+        assertEquals(4 + 8 + 16, shape.segment().byteSize());
+
+        shape.kind = 1;
+        shape.origin = new Point();
+        shape.origin.y = 2;
+        shape.data = new int[]{3, 4, 5, 6};
+        shape.write();
+        assertEquals(2, shape.segment().get(ValueLayout.JAVA_INT, 8));
+        assertEquals(6, shape.segment().get(ValueLayout.JAVA_INT, 24));
+
+        shape.segment().set(ValueLayout.JAVA_INT, 4, 7);
+        shape.read();
+        assertEquals(7, shape.origin.x);
+        assertArrayEquals(new int[]{3, 4, 5, 6}, shape.data);
+    }
+
+    @Test
+    void testGeneratedAccessor() {
+        final Node node = new Node();
+        final Node next = new Node();
+        node.next = new Pointer(next.segment());
+        node.count = 3;
+        node.id = 42;
+        node.write();
+        assertEquals(next.address(), node.segment().get(ValueLayout.ADDRESS, 0).address());
+        assertEquals(3, node.segment().get(ValueLayout.JAVA_INT, 8));
+        assertEquals(42, node.segment().get(ValueLayout.JAVA_LONG, 16));
+
+        node.segment().set(ValueLayout.JAVA_INT, 8, 4);
+        node.read();
+        assertEquals(next.address(), node.next.getAddress());
+        assertEquals(4, node.count);
+
+        // a missing pointer is written as NULL
+        node.next = null;
+        node.write();
+        assertEquals(0, node.segment().get(ValueLayout.ADDRESS, 0).address());
+    }
+
+    @Test
+    void testStructurePool() {
+        final StructurePool<Point> pool = new StructurePool<>(Point.class, 1);
+        final Point point = pool.acquire();
+        point.x = 5;
+        point.write();
+        pool.release(point);
+        assertThrows(IllegalArgumentException.class, () -> pool.release(point));
+        assertEquals(1, pool.size());
+
+        final Point recycled = pool.acquireZeroed();
+        assertSame(point, recycled);
+        assertEquals(0, recycled.x);
+        assertEquals(0, recycled.segment().get(ValueLayout.JAVA_INT, 0));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void testCallback() {
+        final TestStdlib stdlib = Panama.load(TestStdlib.class);
+        final IntComparator comparator = (a, b) -> Integer.compare(MemorySegment.ofAddress(a.getAddress(), 4).get(ValueLayout.JAVA_INT, 0),
+                MemorySegment.ofAddress(b.getAddress(), 4).get(ValueLayout.JAVA_INT, 0));
+        final int[] values = {3, 1, 2};
+        // other tests may leave their stubs behind
+        final int stubs = CallbackStubs.size();
+
+        stdlib.qsort(values, values.length, Integer.BYTES, comparator);
+        stdlib.qsort(values, values.length, Integer.BYTES, comparator);
+        assertArrayEquals(new int[]{1, 2, 3}, values);
+        // the stub is created once and reused
+        assertEquals(stubs + 1, CallbackStubs.size());
+
+        CallbackStubs.release(comparator);
+        assertEquals(stubs, CallbackStubs.size());
+    }
+
+    @Test
+    void testCallbackReturningMemoryIsRejected() {
+        // every call would allocate the returned string for as long as the stub lives
+        assertThrows(NativeException.class, () -> CallbackStubs.getDescriptor(StringSupplier.class));
+    }
+
+    private static long symbol(String name) {
+        return Linker.nativeLinker().defaultLookup().find(name).orElseThrow().address();
+    }
+
+    @Test
+    void testBindFunctionPointer() {
+        final long address = Linker.nativeLinker().defaultLookup().find("abs").orElseThrow().address();
+        final IntUnaryFunction abs = NativeFunction.fromAddress(address).bind(IntUnaryFunction.class);
+
+        assertEquals(5, abs.apply(-5));
+        assertEquals(7, abs.apply(7));
+
+        final LongUnaryFunction labs = NativeFunction.fromAddress(NativeInterfaceTests.symbol("labs")).bind(LongUnaryFunction.class);
+        assertEquals(1L << 40, labs.apply(-(1L << 40)));
+        final StringLength strlen = NativeFunction.fromAddress(NativeInterfaceTests.symbol("strlen")).bind(StringLength.class);
+        assertEquals(5, strlen.length("hello"));
+        // null is passed as the NULL pointer, free ignores it
+        final PointerConsumer free = NativeFunction.fromAddress(NativeInterfaceTests.symbol("free")).bind(PointerConsumer.class);
+        assertDoesNotThrow(() -> free.accept(null));
+
+        assertThrows(NativeException.class, () -> NativeFunction.fromAddress(0).bind(IntUnaryFunction.class));
+        assertThrows(NativeException.class, () -> NativeFunction.fromAddress(address).bind(String.class));
+    }
+
 }
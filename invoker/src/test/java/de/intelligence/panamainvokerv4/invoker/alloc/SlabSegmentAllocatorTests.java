@@ -0,0 +1,67 @@
+package de.intelligence.panamainvokerv4.invoker.alloc;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlabSegmentAllocatorTests {
+
+    private static final long SLAB_SIZE = 64;
+
+    @Test
+    void testScopesResetOffset() {
+        final SlabSegmentAllocator allocator = new SlabSegmentAllocator(SLAB_SIZE);
+
+        allocator.enter();
+        allocator.allocate(16, 8);
+        final long outer = allocator.mark();
+        allocator.enter();
+        allocator.allocate(16, 8);
+        assertEquals(outer + 16, allocator.mark());
+        allocator.exit();
+        assertEquals(outer, allocator.mark());
+        allocator.exit();
+        assertEquals(0, allocator.mark());
+        assertThrows(IllegalStateException.class, allocator::exit);
+    }
+
+    @Test
+    void testNestedScopeKeepsOuterOverflow() {
+        final SlabSegmentAllocator allocator = new SlabSegmentAllocator(SLAB_SIZE);
+
+        allocator.enter();
+        final MemorySegment outer = allocator.allocate(SLAB_SIZE * 2, 8);
+        outer.set(ValueLayout.JAVA_INT, 0, 42);
+        // e.g. an upcall performing a native call while the outer call is still running
+        allocator.enter();
+        final MemorySegment inner = allocator.allocate(SLAB_SIZE * 2, 8);
+        inner.set(ValueLayout.JAVA_INT, 0, 7);
+        allocator.exit();
+
+        assertTrue(outer.scope().isAlive());
+        assertEquals(42, outer.get(ValueLayout.JAVA_INT, 0));
+
+        allocator.exit();
+        assertFalse(outer.scope().isAlive());
+        assertFalse(inner.scope().isAlive());
+    }
+
+    @Test
+    void testOverflowReopenedAfterOutermostExit() {
+        final SlabSegmentAllocator allocator = new SlabSegmentAllocator(SLAB_SIZE);
+
+        allocator.enter();
+        final MemorySegment first = allocator.allocate(SLAB_SIZE * 2, 8);
+        allocator.exit();
+        allocator.enter();
+        final MemorySegment second = allocator.allocate(SLAB_SIZE * 2, 8);
+
+        assertFalse(first.scope().isAlive());
+        assertTrue(second.scope().isAlive());
+        allocator.exit();
+    }
+
+}
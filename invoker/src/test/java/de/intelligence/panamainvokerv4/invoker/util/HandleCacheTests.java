@@ -0,0 +1,83 @@
+package de.intelligence.panamainvokerv4.invoker.util;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SegmentScope;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandleCacheTests {
+
+    private static final MethodType TYPE = MethodType.methodType(int.class, int.class);
+
+    private final AtomicInteger links = new AtomicInteger();
+
+    // no handle is linked, the cache only stores what the supplier returns
+    private void lookup(HandleCache cache, long address) {
+        cache.computeIfAbsent(MemorySegment.ofAddress(address), TYPE, false, CallOptions.NONE, () -> {
+            this.links.incrementAndGet();
+            return null;
+        });
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        final HandleCache cache = new HandleCache(16);
+
+        this.lookup(cache, 1);
+        this.lookup(cache, 1);
+        this.lookup(cache, 2);
+
+        assertEquals(2, this.links.get());
+        assertEquals(new HandleCache.Stats(1, 2, 0, 2), cache.getStats());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        final HandleCache cache = new HandleCache(10);
+        for (int i = 1; i <= 10; i++) {
+            this.lookup(cache, i);
+        }
+        this.lookup(cache, 1);
+
+        // exceeds the bound, the two oldest entries are evicted
+        this.lookup(cache, 11);
+        assertEquals(10 - 1, cache.getStats().size());
+        assertEquals(2, cache.getStats().evictions());
+
+        this.links.set(0);
+        this.lookup(cache, 1);
+        this.lookup(cache, 4);
+        assertEquals(0, this.links.get());
+        this.lookup(cache, 2);
+        assertEquals(1, this.links.get());
+    }
+
+    @Test
+    void testSetMaxSize() {
+        final HandleCache cache = new HandleCache(16);
+        for (int i = 1; i <= 10; i++) {
+            this.lookup(cache, i);
+        }
+
+        cache.setMaxSize(5);
+        assertEquals(5, cache.getMaxSize());
+        assertEquals(5, cache.getStats().size());
+        assertEquals(5, cache.getStats().evictions());
+        assertThrows(IllegalArgumentException.class, () -> cache.setMaxSize(0));
+    }
+
+    @Test
+    void testInvalidateScope() {
+        final HandleCache cache = new HandleCache(16);
+        this.lookup(cache, 1);
+        this.lookup(cache, 2);
+
+        cache.invalidate(SegmentScope.global());
+        assertEquals(0, cache.getStats().size());
+    }
+
+}